@@ -0,0 +1,31 @@
+package com.demo.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.benchmark.BenchmarkRunner
+ * @description 依次以不同线程数运行基准测试,结果写入target/jmh-线程数.json.
+ * 参数为要运行的基准测试正则,线程数通过-Dbench.threads指定,默认1,4,16,64,256
+ * @date 2019/9/20 20:50
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : RedisLockBenchmark.class.getSimpleName();
+        for (String threads : System.getProperty("bench.threads", "1,4,16,64,256").split(",")) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-" + threads.trim() + ".json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.demo.benchmark;
+
+import com.demo.cache.TwoTierCacheManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.benchmark.CacheBenchmark
+ * @description @Cacheable(sync = true)命中时的开销:本地一级缓存与只用Redis对比.值在第一次读取时加载,之后都是命中
+ * @date 2019/10/3 21:00
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CacheBenchmark {
+
+    private static final String CACHE_NAME = "bench";
+
+    /**
+     * 本地缓存命中,不访问Redis
+     */
+    @Benchmark
+    public Object nearCache(RedisLockState state) {
+        return get(state.cacheManager.getCache(CACHE_NAME), state.nextKey());
+    }
+
+    /**
+     * 跳过本地缓存,每次从Redis读取并反序列化
+     */
+    @Benchmark
+    public Object redisCache(RedisLockState state) {
+        return get(((TwoTierCacheManager) state.cacheManager).getDelegate().getCache(CACHE_NAME), state.nextKey());
+    }
+
+    private static Object get(Cache cache, String key) {
+        return cache.get(key, () -> CodecBenchmark.CachedOrder.sample());
+    }
+}
@@ -0,0 +1,121 @@
+package com.demo.benchmark;
+
+import com.demo.config.RedisCodec;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.benchmark.CodecBenchmark
+ * @description 锁token和缓存值的编解码开销,不需要Redis.配合-prof gc查看每次操作的分配字节数(gc.alloc.rate.norm)
+ * @date 2019/9/30 20:40
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    /**
+     * 缓存值的编码
+     */
+    @Param({"json", "binary"})
+    public String codec;
+
+    private String token;
+    /**
+     * 原来RedisConfig中带类型信息的Jackson序列化,作为对比
+     */
+    private RedisSerializer<Object> defaultTypingSerializer;
+    private RedisSerializer<Object> serializer;
+    private CachedOrder order;
+    private byte[] encodedOrder;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        token = UUID.randomUUID().toString();
+        Jackson2JsonRedisSerializer jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer(Object.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        objectMapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+        jackson2JsonRedisSerializer.setObjectMapper(objectMapper);
+        defaultTypingSerializer = jackson2JsonRedisSerializer;
+
+        serializer = RedisCodec.of(codec).serializer();
+        order = CachedOrder.sample();
+        encodedOrder = serializer.serialize(order);
+    }
+
+    /**
+     * 锁token:原来的Jackson序列化
+     */
+    @Benchmark
+    public byte[] tokenJackson() {
+        return defaultTypingSerializer.serialize(token);
+    }
+
+    /**
+     * 锁token:lockRedisTemplate和LuaScriptRegistry的UTF-8编码
+     */
+    @Benchmark
+    public byte[] tokenString() {
+        return token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeValue() {
+        return serializer.serialize(order);
+    }
+
+    @Benchmark
+    public Object decodeValue() {
+        return serializer.deserialize(encodedOrder);
+    }
+
+    /**
+     * 典型的缓存对象
+     */
+    public static class CachedOrder implements Serializable {
+        private long id;
+        private String customer;
+        private long amount;
+        private List<String> items;
+
+        static CachedOrder sample() {
+            CachedOrder order = new CachedOrder();
+            order.id = 1024L;
+            order.customer = "YiHaoXing";
+            order.amount = 12800L;
+            order.items = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                order.items.add("item-" + i);
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.demo.benchmark;
+
+import com.demo.cache.CompactKeyGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.interceptor.KeyGenerator;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.benchmark.KeyGeneratorBenchmark
+ * @description 生成缓存key的开销,不需要Redis.配合-prof gc查看每次的分配字节数
+ * @date 2019/10/4 21:00
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyGeneratorBenchmark {
+
+    /**
+     * short:一个long参数; long:参数较多,超过max-length后哈希
+     */
+    @Param({"short", "long"})
+    public String params;
+
+    /**
+     * 原来RedisConfig中的写法
+     */
+    private final KeyGenerator original = (target, method, params) -> {
+        StringBuilder sb = new StringBuilder();
+        sb.append(target.getClass().getName());
+        sb.append(method.getName());
+        for (Object obj : params) {
+            sb.append(obj.toString());
+        }
+        return sb.toString();
+    };
+    private final KeyGenerator compact = new CompactKeyGenerator(128);
+    private final LockedService target = new LockedService();
+    private Method method;
+    private Object[] args;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        method = LockedService.class.getMethod("locked", String.class);
+        if ("short".equals(params)) {
+            args = new Object[]{123456789L};
+        } else {
+            StringBuilder filter = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                filter.append("field").append(i).append("=value").append(i).append('&');
+            }
+            args = new Object[]{"tenant-42", 20191004L, 100, filter.toString()};
+        }
+    }
+
+    @Benchmark
+    public Object original() {
+        return original.generate(target, method, args);
+    }
+
+    @Benchmark
+    public Object compact() {
+        return compact.generate(target, method, args);
+    }
+}
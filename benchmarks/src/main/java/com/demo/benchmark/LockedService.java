@@ -0,0 +1,26 @@
+package com.demo.benchmark;
+
+import com.demo.annotation.LeaderOnly;
+import com.demo.annotation.RedisLock;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.benchmark.LockedService
+ * @description 用于测量@RedisLock、@LeaderOnly切面开销的空方法
+ * @date 2019/9/20 20:25
+ */
+@Component
+public class LockedService {
+
+    @RedisLock(key = "#key")
+    public boolean locked(String key) {
+        return true;
+    }
+
+    @LeaderOnly
+    public boolean leaderOnly() {
+        return true;
+    }
+}
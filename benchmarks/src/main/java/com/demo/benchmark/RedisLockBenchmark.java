@@ -0,0 +1,192 @@
+package com.demo.benchmark;
+
+import com.demo.redis.DistributedLock;
+import com.demo.redis.LockHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.redisson.api.RLock;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.benchmark.RedisLockBenchmark
+ * @description RedisLockUtils各种锁的加锁+释放吞吐量和延迟分位数(SampleTime模式输出p50/p99/p999)
+ * @date 2019/9/20 20:30
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class RedisLockBenchmark {
+
+    /**
+     * 等待锁的时间和锁的过期时间.以毫秒为单位
+     */
+    private static final long WAIT_MILLIS = 3000L;
+    private static final long EXPIRE_MILLIS = 30000L;
+
+    /**
+     * 每个线程自己的锁value
+     */
+    @State(Scope.Thread)
+    public static class Owner {
+        final String value = UUID.randomUUID().toString();
+    }
+
+    /**
+     * SET NX PX获取, LUA脚本释放
+     */
+    @Benchmark
+    public boolean setNx(RedisLockState state, Owner owner) {
+        String key = state.nextKey();
+        boolean lock = state.redisLockUtils.getLock(key, owner.value, 30);
+        if (lock) {
+            state.redisLockUtils.releaseLockByLua(key, owner.value);
+        }
+        return lock;
+    }
+
+    /**
+     * LUA脚本获取, 不等待
+     */
+    @Benchmark
+    public boolean lua(RedisLockState state, Owner owner) {
+        String key = state.nextKey();
+        boolean lock = state.redisLockUtils.getLockByLua(key, owner.value, 30);
+        if (lock) {
+            state.redisLockUtils.releaseLockByLua(key, owner.value);
+        }
+        return lock;
+    }
+
+    /**
+     * LUA脚本获取, 通过发布订阅等待
+     */
+    @Benchmark
+    public boolean luaWait(RedisLockState state, Owner owner) throws InterruptedException {
+        String key = state.nextKey();
+        boolean lock = state.redisLockUtils.tryLockByLua(key, owner.value, EXPIRE_MILLIS, WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        if (lock) {
+            state.redisLockUtils.releaseLockByLua(key, owner.value);
+        }
+        return lock;
+    }
+
+    /**
+     * LUA脚本获取并生成fencing token, 与luaWait对比即为INCR的开销
+     */
+    @Benchmark
+    public long fenced(RedisLockState state, Owner owner) throws InterruptedException {
+        String key = state.nextKey();
+        long token = state.redisLockUtils.tryLockWithFencingToken(key, owner.value, EXPIRE_MILLIS, WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        if (token > 0) {
+            state.redisLockUtils.releaseLockByLua(key, owner.value);
+        }
+        return token;
+    }
+
+    @Benchmark
+    public boolean reentrant(RedisLockState state) throws InterruptedException {
+        String key = state.nextKey();
+        boolean lock = state.redisLockUtils.getReentrantLock(key, (int) WAIT_MILLIS, (int) EXPIRE_MILLIS, TimeUnit.MILLISECONDS);
+        if (lock) {
+            state.redisLockUtils.unlock(key);
+        }
+        return lock;
+    }
+
+    /**
+     * 3个master上并行加RedLock, 与reentrant对比即为多节点的开销
+     */
+    @Benchmark
+    public boolean quorum(RedisLockState state) throws InterruptedException {
+        LockHandle handle = state.redisLockUtils.getQuorumLock(state.nextKey(), WAIT_MILLIS, EXPIRE_MILLIS, TimeUnit.MILLISECONDS);
+        if (handle != null) {
+            handle.unlockAsync().toCompletableFuture().join();
+        }
+        return handle != null;
+    }
+
+    @Benchmark
+    public boolean fair(RedisLockState state) throws InterruptedException {
+        RLock lock = state.redissonClient.getFairLock(state.nextKey());
+        boolean locked = lock.tryLock(WAIT_MILLIS, EXPIRE_MILLIS, TimeUnit.MILLISECONDS);
+        if (locked) {
+            lock.unlock();
+        }
+        return locked;
+    }
+
+    @Benchmark
+    public boolean readLock(RedisLockState state) throws InterruptedException {
+        RLock lock = state.redissonClient.getReadWriteLock(state.nextKey()).readLock();
+        boolean locked = lock.tryLock(WAIT_MILLIS, EXPIRE_MILLIS, TimeUnit.MILLISECONDS);
+        if (locked) {
+            lock.unlock();
+        }
+        return locked;
+    }
+
+    @Benchmark
+    public boolean writeLock(RedisLockState state) throws InterruptedException {
+        RLock lock = state.redissonClient.getReadWriteLock(state.nextKey()).writeLock();
+        boolean locked = lock.tryLock(WAIT_MILLIS, EXPIRE_MILLIS, TimeUnit.MILLISECONDS);
+        if (locked) {
+            lock.unlock();
+        }
+        return locked;
+    }
+
+    /**
+     * java.util.concurrent.locks.Lock风格的DistributedLock, 与reentrant对比工厂缓存和包装的开销
+     */
+    @Benchmark
+    public boolean distributedLock(RedisLockState state) throws InterruptedException {
+        DistributedLock lock = state.distributedLockFactory.getLock(state.nextKey());
+        boolean locked = lock.tryLock(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        if (locked) {
+            lock.unlock();
+        }
+        return locked;
+    }
+
+    /**
+     * 4个许可的信号量, 与reentrant对比热点key上放开并发后的收益
+     */
+    @Benchmark
+    public boolean semaphore(RedisLockState state) throws InterruptedException {
+        String key = state.nextKey();
+        String permitId = state.redisLockUtils.tryAcquirePermit(key, 4, WAIT_MILLIS, EXPIRE_MILLIS, TimeUnit.MILLISECONDS);
+        if (permitId != null) {
+            state.redisLockUtils.releasePermit(key, permitId);
+        }
+        return permitId != null;
+    }
+
+    /**
+     * @RedisLock切面, 与reentrant对比即为切面本身的开销
+     */
+    @Benchmark
+    public boolean aspect(RedisLockState state) {
+        return state.lockedService.locked(state.nextKey());
+    }
+
+    /**
+     * @LeaderOnly只读本地状态,与keys参数无关
+     */
+    @Benchmark
+    public boolean leaderOnly(RedisLockState state) {
+        return state.lockedService.leaderOnly();
+    }
+}
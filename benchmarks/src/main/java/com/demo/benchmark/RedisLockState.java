@@ -0,0 +1,144 @@
+package com.demo.benchmark;
+
+import com.demo.RedisLockApplication;
+import com.demo.redis.DistributedLockFactory;
+import com.demo.redis.RedisLockUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.benchmark.RedisLockState
+ * @description 基准测试环境.启动内嵌Redis和不带Web的Spring容器,所有线程共享
+ * @date 2019/9/20 20:10
+ */
+@State(Scope.Benchmark)
+public class RedisLockState {
+
+    /**
+     * 热点key
+     */
+    private static final String HOT_KEY = "bench:hot";
+    /**
+     * 分散key的数量,线程随机选择其中一个,基本没有竞争
+     */
+    private static final int SPREAD_KEYS = 4096;
+    /**
+     * RedLock的master数量
+     */
+    private static final int QUORUM_NODES = 3;
+
+    /**
+     * hot:所有线程竞争同一个key; spread:线程在大量key中随机选择
+     */
+    @Param({"hot", "spread"})
+    public String keys;
+
+    /**
+     * value锁的后端(redis.lock.backend).memory去掉了网络往返,与redis对比客户端自身的开销
+     */
+    @Param({"redis", "memory"})
+    public String backend;
+
+    RedisLockUtils redisLockUtils;
+    RedissonClient redissonClient;
+    LockedService lockedService;
+    DistributedLockFactory distributedLockFactory;
+    CacheManager cacheManager;
+
+    private RedisServer redisServer;
+    private final List<RedisServer> quorumServers = new ArrayList<>();
+    private ConfigurableApplicationContext context;
+    private File redissonConfig;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        int port = freePort();
+        redisServer = RedisServer.builder().port(port).setting("bind 127.0.0.1").build();
+        redisServer.start();
+
+        redissonConfig = File.createTempFile("redisson-bench", ".yml");
+        String yaml = "singleServerConfig:\n" +
+                "  address: \"redis://127.0.0.1:" + port + "\"\n" +
+                "  connectionMinimumIdleSize: 32\n" +
+                "  connectionPoolSize: 64\n" +
+                "threads: 0\n" +
+                "nettyThreads: 0\n" +
+                "transportMode: \"NIO\"\n";
+        Files.write(redissonConfig.toPath(), yaml.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder addresses = new StringBuilder();
+        for (int i = 0; i < QUORUM_NODES; i++) {
+            int quorumPort = freePort();
+            RedisServer quorumServer = RedisServer.builder().port(quorumPort).setting("bind 127.0.0.1").build();
+            quorumServer.start();
+            quorumServers.add(quorumServer);
+            addresses.append(i == 0 ? "" : ",").append("redis://127.0.0.1:").append(quorumPort);
+        }
+
+        //系统属性优先级高于application.yml
+        System.setProperty("spring.redis.host", "127.0.0.1");
+        System.setProperty("spring.redis.port", String.valueOf(port));
+        System.setProperty("spring.redis.password", "");
+        System.setProperty("redisson.config", "file:" + redissonConfig.getAbsolutePath());
+        System.setProperty("redis.lock.redlock.addresses", addresses.toString());
+        System.setProperty("redis.lock.leader.enabled", "true");
+        System.setProperty("redis.lock.backend", backend);
+        System.setProperty("logging.level.com.demo", "WARN");
+        context = new SpringApplicationBuilder(RedisLockApplication.class)
+                .web(WebApplicationType.NONE)
+                .run();
+        redisLockUtils = context.getBean(RedisLockUtils.class);
+        redissonClient = context.getBean(RedissonClient.class);
+        lockedService = context.getBean(LockedService.class);
+        distributedLockFactory = context.getBean(DistributedLockFactory.class);
+        cacheManager = context.getBean(CacheManager.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (context != null) {
+            context.close();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+        quorumServers.forEach(RedisServer::stop);
+        if (redissonConfig != null) {
+            redissonConfig.delete();
+        }
+    }
+
+    String nextKey() {
+        if ("hot".equals(keys)) {
+            return HOT_KEY;
+        }
+        return "bench:spread:" + ThreadLocalRandom.current().nextInt(SPREAD_KEYS);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
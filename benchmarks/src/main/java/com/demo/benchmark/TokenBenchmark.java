@@ -0,0 +1,51 @@
+package com.demo.benchmark;
+
+import com.demo.redis.LockTokenGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.benchmark.TokenBenchmark
+ * @description 生成锁value的开销,不需要Redis.多线程运行(-t)对比Math.random()的竞争,配合-prof gc查看每次的分配字节数
+ * @date 2019/10/1 20:50
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenBenchmark {
+
+    private final LockTokenGenerator tokenGenerator = new LockTokenGenerator();
+
+    /**
+     * 原来控制器中的写法
+     */
+    @Benchmark
+    public String threadIdRandom() {
+        return new StringBuilder().append(Thread.currentThread().getId()).append(Math.random()).toString();
+    }
+
+    @Benchmark
+    public String uuid() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String generator() {
+        return tokenGenerator.next();
+    }
+}
@@ -0,0 +1,16 @@
+package com.demo.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @author YiHaoXing
+ * @description 只在leader节点执行的方法,非leader节点直接返回null(基本类型返回默认值).
+ * 用于@Scheduled单例任务,判断只读本地的leader状态,每次触发不访问Redis.需要配置redis.lock.leader.enabled=true,
+ * 未开启选举时注解不生效,所有节点都会执行
+ * @date 20:50 2019/9/29
+ **/
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface LeaderOnly {
+}
@@ -0,0 +1,19 @@
+package com.demo.annotation;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.annotation.LockMode
+ * @description @RedisLock的加锁方式
+ * @date 2019/9/27 20:05
+ */
+public enum LockMode {
+    /**
+     * 在redisson.config配置的Redis上加Redisson可重入锁
+     */
+    DEFAULT,
+    /**
+     * RedLock.在redis.lock.redlock.addresses配置的多个独立master上同时加锁,多数节点成功即获取成功
+     */
+    QUORUM
+}
@@ -1,6 +1,7 @@
 package com.demo.annotation;
 
 import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author YiHaoXing
@@ -12,17 +13,52 @@ import java.lang.annotation.*;
 @Documented
 public @interface RedisLock {
     /**
-     * 锁的过期时间.以秒为单位
+     * 锁的过期时间.单位由timeUnit指定
      */
     int expireTime() default 30;
 
     /**
-     * 未获取到锁后等待重试时间.以秒为单位
+     * 未获取到锁后等待重试时间.单位由timeUnit指定
      */
     int waitTime() default 3;
+
+    /**
+     * expireTime和waitTime的时间单位.默认为秒,需要亚秒级的锁时使用毫秒
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     * 是否先获取JVM本地锁.开启后同一节点上竞争同一个key的线程先在本地排队,只有本地胜出的线程访问Redis.
+     * 仅对同步方法生效,返回CompletionStage/Mono/Flux的方法设置时调用抛出IllegalStateException
+     */
+    boolean localFirst() default false;
+
+    /**
+     * 是否生成fencing token.开启后使用LUA锁,方法内通过FencingToken.current()获取本次加锁的token.
+     * 仅对同步方法生效(异步方法设置时调用抛出IllegalStateException),开启时忽略localFirst
+     */
+    boolean fencing() default false;
+
     /**
-     * redis的key
+     * Redis不可用时是否允许降级为JVM本地锁.redis.lock.breaker.policy为local时生效,降级后只保证本节点内互斥,
+     * 只适用于偶尔重复执行可以接受的方法.仅对同步方法生效(异步方法设置时调用抛出IllegalStateException),忽略fencing和QUORUM
+     */
+    boolean degradable() default false;
+
+    /**
+     * 加锁方式.QUORUM时在多个独立的master上加RedLock,忽略localFirst和fencing
+     */
+    LockMode mode() default LockMode.DEFAULT;
+
+    /**
+     * redis的key.静态字符串,其中的#没有特殊含义.需要按参数生成key时使用key
      * @return
      */
     String value() default "";
+
+    /**
+     * SpEL表达式,每次调用时计算锁的key,方法参数以#参数名引用,例如"'order:' + #orderId".
+     * 与value只能设置一个;计算结果为null或空字符串时抛出IllegalArgumentException
+     */
+    String key() default "";
 }
@@ -0,0 +1,45 @@
+package com.demo.annotation;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @description Redis信号量注解.最多permits个调用同时执行,例如限制对下游服务的并发调用数.仅对同步方法生效
+ * @date 20:30 2019/9/24
+ **/
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RedisSemaphore {
+    /**
+     * 许可总数.只在信号量第一次创建时生效
+     */
+    int permits() default 1;
+
+    /**
+     * 许可的过期时间.持有者宕机后许可到期自动归还.单位由timeUnit指定
+     */
+    int leaseTime() default 30;
+
+    /**
+     * 未获取到许可后等待重试时间.单位由timeUnit指定
+     */
+    int waitTime() default 3;
+
+    /**
+     * leaseTime和waitTime的时间单位
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     * redis的key.静态字符串,与@RedisLock的value相同
+     * @return
+     */
+    String value() default "";
+
+    /**
+     * 计算key的SpEL表达式,与@RedisLock的key相同
+     */
+    String key() default "";
+}
@@ -0,0 +1,61 @@
+package com.demo.aspect;
+
+import com.demo.redis.LeaderElection;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.aspect.LeaderOnlyAspect
+ * @description @LeaderOnly切面.只在开启leader选举时生效
+ * @date 2019/9/29 20:55
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(prefix = "redis.lock.leader", name = "enabled", havingValue = "true")
+@Slf4j
+public class LeaderOnlyAspect {
+
+    /**
+     * 基本类型返回值的默认值
+     */
+    private static final Map<Class<?>, Object> PRIMITIVE_DEFAULTS = new HashMap<>();
+
+    static {
+        PRIMITIVE_DEFAULTS.put(boolean.class, false);
+        PRIMITIVE_DEFAULTS.put(byte.class, (byte) 0);
+        PRIMITIVE_DEFAULTS.put(short.class, (short) 0);
+        PRIMITIVE_DEFAULTS.put(char.class, '\0');
+        PRIMITIVE_DEFAULTS.put(int.class, 0);
+        PRIMITIVE_DEFAULTS.put(long.class, 0L);
+        PRIMITIVE_DEFAULTS.put(float.class, 0F);
+        PRIMITIVE_DEFAULTS.put(double.class, 0D);
+    }
+
+    @Autowired
+    private LeaderElection leaderElection;
+
+    @Pointcut("@annotation(com.demo.annotation.LeaderOnly)")
+    public void leaderOnlyPointCut() {
+    }
+
+    @Around("leaderOnlyPointCut()")
+    public Object around(ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
+        if (leaderElection.isLeader()) {
+            return proceedingJoinPoint.proceed();
+        }
+        log.debug("Node {} is not leader, skip {}", leaderElection.getNodeId(), proceedingJoinPoint.getSignature().toShortString());
+        return PRIMITIVE_DEFAULTS.get(((MethodSignature) proceedingJoinPoint.getSignature()).getReturnType());
+    }
+}
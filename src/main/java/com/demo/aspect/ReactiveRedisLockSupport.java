@@ -0,0 +1,121 @@
+package com.demo.aspect;
+
+import com.demo.redis.LockHandle;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.aspect.ReactiveRedisLockSupport
+ * @description 返回Mono/Flux的方法加锁.订阅时才异步获取锁,发布者结束(完成、异常或取消)后异步释放锁.
+ * 单独成类,避免未引入Reactor时RedisLockAspect加载失败
+ * @date 2019/9/11 23:20
+ */
+@Slf4j
+final class ReactiveRedisLockSupport {
+
+    private ReactiveRedisLockSupport() {
+    }
+
+    static boolean isReactiveType(Class<?> type) {
+        return Mono.class.isAssignableFrom(type) || Flux.class.isAssignableFrom(type);
+    }
+
+    /**
+     * @param [proceedingJoinPoint, returnType, acquire, executor]
+     * @return java.lang.Object
+     * @author YiHaoXing
+     * @description 获取锁失败时与同步方法一致,不执行目标方法,返回空的Mono/Flux.目标方法在executor中执行,不占用Netty线程
+     * @date 23:26 2019/9/11
+     **/
+    static Object around(ProceedingJoinPoint proceedingJoinPoint, Class<?> returnType, Supplier<CompletionStage<LockHandle>> acquire, Executor executor) {
+        Mono<Acquired> lock = acquire(acquire, executor)
+                .onErrorResume(TimeoutException.class, e -> {
+                    log.debug("获取锁失败: {}", e.getMessage());
+                    return Mono.empty();
+                });
+        if (Mono.class.isAssignableFrom(returnType)) {
+            return lock.flatMap(acquired -> acquired.claim()
+                    ? Mono.from(proceed(proceedingJoinPoint)).doFinally(signal -> RedisLockAspect.unlockAsync(acquired.handle))
+                    : Mono.empty());
+        }
+        return lock.flatMapMany(acquired -> acquired.claim()
+                ? Flux.from(proceed(proceedingJoinPoint)).doFinally(signal -> RedisLockAspect.unlockAsync(acquired.handle))
+                : Flux.empty());
+    }
+
+    /**
+     * @param [acquire, executor]
+     * @return reactor.core.publisher.Mono<com.demo.aspect.ReactiveRedisLockSupport.Acquired>
+     * @author YiHaoXing
+     * @description 订阅时异步获取锁.获取完成前取消订阅时,锁仍可能在之后获取成功,此时没有下游接手,由这里释放
+     * @date 20:10 2019/10/6
+     **/
+    private static Mono<Acquired> acquire(Supplier<CompletionStage<LockHandle>> acquire, Executor executor) {
+        return Mono.create(sink -> {
+            AtomicBoolean cancelled = new AtomicBoolean();
+            AtomicReference<Acquired> arrived = new AtomicReference<>();
+            sink.onCancel(() -> {
+                cancelled.set(true);
+                releaseUnclaimed(arrived.get());
+            });
+            acquire.get().whenCompleteAsync((handle, e) -> {
+                if (e != null) {
+                    sink.error(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    return;
+                }
+                Acquired acquired = new Acquired(handle);
+                arrived.set(acquired);
+                sink.success(acquired);
+                //已取消时sink丢弃结果,下游不会接手
+                if (cancelled.get()) {
+                    releaseUnclaimed(acquired);
+                }
+            }, executor);
+        });
+    }
+
+    private static void releaseUnclaimed(Acquired acquired) {
+        if (acquired != null && acquired.claim()) {
+            log.debug("订阅已取消,释放锁{}", acquired.handle.getLockKey());
+            RedisLockAspect.unlockAsync(acquired.handle);
+        }
+    }
+
+    private static Publisher<?> proceed(ProceedingJoinPoint proceedingJoinPoint) {
+        try {
+            Publisher<?> publisher = (Publisher<?>) proceedingJoinPoint.proceed();
+            return publisher == null ? Mono.empty() : publisher;
+        } catch (Throwable throwable) {
+            return Mono.error(throwable);
+        }
+    }
+
+    /**
+     * 获取到的锁.下游执行目标方法和取消订阅时的释放只有一方能认领,认领方负责释放
+     */
+    private static final class Acquired {
+        private final LockHandle handle;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Acquired(LockHandle handle) {
+            this.handle = handle;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package com.demo.aspect;
 
+import com.demo.annotation.LockMode;
 import com.demo.annotation.RedisLock;
+import com.demo.redis.FencingToken;
+import com.demo.redis.LockHandle;
+import com.demo.redis.LockKeyStrategy;
+import com.demo.redis.LockMetrics;
+import com.demo.redis.RedisCircuitBreaker;
 import com.demo.redis.RedisLockUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -10,9 +16,22 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * @author YiHaoXing
@@ -25,6 +44,40 @@ import java.util.concurrent.TimeUnit;
 public class RedisLockAspect {
     @Autowired
     private RedisLockUtils redisLockUtils;
+    @Autowired
+    private LockMetrics lockMetrics;
+    @Autowired
+    private LockKeyStrategy keyStrategy;
+
+    /**
+     * 是否引入了Reactor.没有引入时不加载ReactiveRedisLockSupport
+     */
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono", RedisLockAspect.class.getClassLoader());
+
+    /**
+     * 方法上注解的解析结果缓存
+     */
+    private final ConcurrentMap<Method, RedisLockMetadata<RedisLock>> metadataCache = new ConcurrentHashMap<>();
+
+    /**
+     * 异步获取锁成功后执行目标方法的线程池.锁的回调在Redisson的Netty线程上,目标方法可能阻塞或同步调用Redisson,不能在回调中直接执行
+     */
+    private ExecutorService proceedExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        proceedExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "redis-lock-async-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        proceedExecutor.shutdown();
+    }
 
     @Pointcut("@annotation(com.demo.annotation.RedisLock)")
     public void redisLockPointCut() {
@@ -35,34 +88,216 @@ public class RedisLockAspect {
     public Object around(ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
         MethodSignature signature = (MethodSignature) proceedingJoinPoint.getSignature();
         Method method = signature.getMethod();
-        RedisLock annotation = method.getAnnotation(RedisLock.class);
+        RedisLockMetadata<RedisLock> metadata = metadataCache.computeIfAbsent(method, m -> {
+            RedisLock redisLock = m.getAnnotation(RedisLock.class);
+            checkAsyncAttributes(m, redisLock);
+            return new RedisLockMetadata<>(m, redisLock, redisLock.value(), redisLock.key());
+        });
+        RedisLock annotation = metadata.getAnnotation();
 
-        //锁的key
-        String key = annotation.value();
+        //锁的业务key.由RedisLockUtils转换为Redis中的key,这里不能提前转换
+        String key = metadata.resolveKey(proceedingJoinPoint.getArgs());
         //等待时间
         int waitTime = annotation.waitTime();
         //过期时间
         int expireTime = annotation.expireTime();
+        //时间单位
+        TimeUnit timeUnit = annotation.timeUnit();
+        //是否先获取本地锁
+        boolean localFirst = annotation.localFirst();
+
+        //返回CompletionStage/Mono/Flux的方法,锁要持有到异步结果完成,加锁和释放锁都不能阻塞调用线程
+        Class<?> returnType = method.getReturnType();
+        boolean quorum = annotation.mode() == LockMode.QUORUM;
+        Supplier<CompletionStage<LockHandle>> acquire = quorum
+                ? () -> redisLockUtils.getQuorumLockAsync(key, waitTime, expireTime, timeUnit)
+                : () -> redisLockUtils.getReentrantLockAsync(key, waitTime, expireTime, timeUnit);
+        if (CompletionStage.class.isAssignableFrom(returnType)) {
+            return aroundCompletionStage(proceedingJoinPoint, key, acquire);
+        }
+        if (REACTOR_PRESENT && ReactiveRedisLockSupport.isReactiveType(returnType)) {
+            return ReactiveRedisLockSupport.around(proceedingJoinPoint, returnType, acquire, proceedExecutor);
+        }
+        if (quorum) {
+            return aroundQuorum(proceedingJoinPoint, key, waitTime, expireTime, timeUnit);
+        }
+        if (annotation.fencing()) {
+            return aroundFenced(proceedingJoinPoint, key, waitTime, expireTime, timeUnit);
+        }
 
         boolean lock = false;
+        //Redis不可用时降级为本地锁
+        boolean degraded = false;
+        long acquiredNanos = 0L;
+        long startNanos = System.nanoTime();
         try {
             //获取锁
-            lock = redisLockUtils.getReentrantLock(key, waitTime, expireTime, TimeUnit.SECONDS);
+            try {
+                lock = localFirst
+                        ? redisLockUtils.getTwoLevelLock(key, waitTime, expireTime, timeUnit)
+                        : redisLockUtils.getReentrantLock(key, waitTime, expireTime, timeUnit);
+            } catch (RuntimeException e) {
+                if (!annotation.degradable() || !redisLockUtils.canDegrade(e)) {
+                    throw e;
+                }
+                log.debug("Redis不可用,锁{}降级为本地锁: {}", key, e.getMessage());
+                degraded = true;
+                //Redis的尝试可能已经用掉了部分等待时间,本地锁只等待剩余的部分
+                long remainingNanos = Math.max(timeUnit.toNanos(waitTime) - (System.nanoTime() - startNanos), 0L);
+                lock = redisLockUtils.getDegradedLock(key, remainingNanos, TimeUnit.NANOSECONDS);
+            }
             if (lock) {
-                log.info("Thread:{}获取锁成功",Thread.currentThread().getId());
+                acquiredNanos = System.nanoTime();
+                log.debug("Thread:{}获取锁成功",Thread.currentThread().getId());
                 return proceedingJoinPoint.proceed();
             } else {
-                log.info("Thread:{}获取锁失败",Thread.currentThread().getId());
+                log.debug("Thread:{}获取锁失败",Thread.currentThread().getId());
             }
         } catch (Throwable throwable) {
             throw throwable;
         } finally {
             //释放锁
             if(lock){
-                redisLockUtils.unlock(key);
-                log.info("Thread:{}释放锁",Thread.currentThread().getId());
+                lockMetrics.recordHold(keyStrategy.apply(key), System.nanoTime() - acquiredNanos);
+                if (degraded) {
+                    redisLockUtils.unlockDegraded(key);
+                } else if (localFirst) {
+                    redisLockUtils.unlockTwoLevel(key);
+                } else {
+                    redisLockUtils.unlock(key);
+                }
+                log.debug("Thread:{}释放锁",Thread.currentThread().getId());
             }
         }
         return null;
     }
+
+    /**
+     * @param [method, redisLock]
+     * @return void
+     * @author YiHaoXing
+     * @description 返回CompletionStage/Mono/Flux的方法不支持localFirst、fencing和degradable:本地锁和fencing token绑定在线程上,
+     * 异步结果在其他线程完成.设置了这些属性时在第一次调用时失败,而不是按返回值类型悄悄忽略
+     * @date 21:30 2019/10/7
+     **/
+    private static void checkAsyncAttributes(Method method, RedisLock redisLock) {
+        Class<?> returnType = method.getReturnType();
+        boolean async = CompletionStage.class.isAssignableFrom(returnType)
+                || (REACTOR_PRESENT && ReactiveRedisLockSupport.isReactiveType(returnType));
+        if (async && (redisLock.localFirst() || redisLock.fencing() || redisLock.degradable())) {
+            throw new IllegalStateException("@RedisLock on async method " + method.toGenericString()
+                    + " does not support localFirst, fencing or degradable");
+        }
+    }
+
+    /**
+     * @param [proceedingJoinPoint, key, waitTime, expireTime, timeUnit]
+     * @return java.lang.Object
+     * @author YiHaoXing
+     * @description 同步方法加RedLock.释放时不等待各节点的结果
+     * @date 20:55 2019/9/27
+     **/
+    private Object aroundQuorum(ProceedingJoinPoint proceedingJoinPoint, String key, int waitTime, int expireTime, TimeUnit timeUnit) throws Throwable {
+        LockHandle handle = redisLockUtils.getQuorumLock(key, waitTime, expireTime, timeUnit);
+        if (handle == null) {
+            log.debug("Thread:{}获取锁失败",Thread.currentThread().getId());
+            return null;
+        }
+        try {
+            return proceedingJoinPoint.proceed();
+        } finally {
+            unlockAsync(handle);
+        }
+    }
+
+    /**
+     * @param [proceedingJoinPoint, key, waitTime, expireTime, timeUnit]
+     * @return java.lang.Object
+     * @author YiHaoXing
+     * @description 使用fencing token加锁.token在方法执行期间绑定到当前线程
+     * @date 21:50 2019/9/25
+     **/
+    private Object aroundFenced(ProceedingJoinPoint proceedingJoinPoint, String key, int waitTime, int expireTime, TimeUnit timeUnit) throws Throwable {
+        String value = redisLockUtils.nextToken();
+        long token = redisLockUtils.tryLockWithFencingToken(key, value, expireTime, waitTime, timeUnit);
+        if (token == 0) {
+            log.debug("Thread:{}获取锁失败",Thread.currentThread().getId());
+            return null;
+        }
+        long acquiredNanos = System.nanoTime();
+        Long previous = FencingToken.bind(token);
+        try {
+            return proceedingJoinPoint.proceed();
+        } finally {
+            FencingToken.bind(previous);
+            lockMetrics.recordHold(keyStrategy.apply(key), System.nanoTime() - acquiredNanos);
+            try {
+                if (!redisLockUtils.releaseLockByLua(key, value)) {
+                    //锁已过期,其他持有者的token更大,本次的写入会被下游拒绝
+                    log.warn("锁{}在释放前已过期, token: {}", key, token);
+                }
+            } catch (RuntimeException e) {
+                //Redis不可用时不覆盖业务方法的结果,锁在过期后自动清除
+                if (!RedisCircuitBreaker.isUnavailable(e)) {
+                    throw e;
+                }
+                log.warn("Redis不可用,锁{}未释放,将在过期后自动清除: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param [proceedingJoinPoint, key, acquire]
+     * @return java.util.concurrent.CompletableFuture<java.lang.Object>
+     * @author YiHaoXing
+     * @description 异步方法加锁.获取锁失败时与同步方法一致,结果为null.目标方法在proceedExecutor中执行,不占用Netty线程
+     * @date 23:05 2019/9/11
+     **/
+    private CompletableFuture<Object> aroundCompletionStage(ProceedingJoinPoint proceedingJoinPoint, String key, Supplier<CompletionStage<LockHandle>> acquire) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        acquire.get().whenCompleteAsync((handle, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof TimeoutException) {
+                    log.debug("获取锁{}失败", key);
+                    result.complete(null);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+                return;
+            }
+            CompletionStage<?> stage;
+            try {
+                stage = (CompletionStage<?>) proceedingJoinPoint.proceed();
+            } catch (Throwable throwable) {
+                unlockAsync(handle);
+                result.completeExceptionally(throwable);
+                return;
+            }
+            if (stage == null) {
+                unlockAsync(handle);
+                result.complete(null);
+                return;
+            }
+            stage.whenComplete((value, throwable) -> {
+                unlockAsync(handle);
+                if (throwable != null) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }, proceedExecutor);
+        return result;
+    }
+
+    static void unlockAsync(LockHandle handle) {
+        handle.unlockAsync().whenComplete((v, e) -> {
+            if (e != null) {
+                log.error("释放锁{}失败: {}", handle.getLockKey(), e.getMessage());
+            } else {
+                log.debug("Owner:{}释放锁", handle.getOwnerId());
+            }
+        });
+    }
 }
@@ -0,0 +1,102 @@
+package com.demo.aspect;
+
+import lombok.Getter;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.aspect.RedisLockMetadata
+ * @description 每个方法上@RedisLock/@RedisSemaphore的解析结果.注解、参数名和key表达式只在第一次调用时解析,之后直接复用
+ * @date 2019/9/14 16:10
+ */
+@Getter
+final class RedisLockMetadata<A extends Annotation> {
+
+    /**
+     * MIXED模式:表达式执行几次后编译为字节码,编译失败时回退为解释执行
+     */
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, RedisLockMetadata.class.getClassLoader()));
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    private final A annotation;
+    /**
+     * 静态key.使用表达式时为null
+     */
+    private final String literalKey;
+    /**
+     * 编译后的key表达式.使用静态key时为null
+     */
+    private final Expression keyExpression;
+    private final String[] parameterNames;
+    /**
+     * 方法和表达式的描述,用于key计算结果为空时的异常信息
+     */
+    private final String description;
+
+    /**
+     * @param [method, annotation, value, key] value为注解中的静态key,key为注解中的SpEL表达式,最多设置一个.
+     * 静态key中的#没有特殊含义,只有key属性按SpEL解析
+     */
+    RedisLockMetadata(Method method, A annotation, String value, String key) {
+        this.annotation = annotation;
+        if (!key.isEmpty() && !value.isEmpty()) {
+            throw new IllegalStateException("@" + annotation.annotationType().getSimpleName() + " on " + method.toGenericString()
+                    + " sets both value and key");
+        }
+        if (!key.isEmpty()) {
+            this.literalKey = null;
+            this.keyExpression = PARSER.parseExpression(key);
+            this.parameterNames = parameterNames(method);
+        } else {
+            this.literalKey = value;
+            this.keyExpression = null;
+            this.parameterNames = null;
+        }
+        this.description = method.toGenericString() + " key \"" + key + "\"";
+    }
+
+    /**
+     * @param [args]
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description 计算本次调用的锁key.方法参数以#参数名引用,参数名不可用时以#p0、#p1引用.
+     * 表达式结果为null或空字符串(例如参数为null)时抛出IllegalArgumentException,不会锁在"null"上
+     * @date 16:22 2019/9/14
+     **/
+    String resolveKey(Object[] args) {
+        if (keyExpression == null) {
+            return literalKey;
+        }
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        for (int i = 0; i < args.length; i++) {
+            context.setVariable(parameterNames[i], args[i]);
+        }
+        String key = keyExpression.getValue(context, String.class);
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Lock key of " + description + " resolved to " + (key == null ? "null" : "an empty string"));
+        }
+        return key;
+    }
+
+    private static String[] parameterNames(Method method) {
+        String[] names = PARAMETER_NAME_DISCOVERER.getParameterNames(method);
+        if (names == null) {
+            names = new String[method.getParameterCount()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = "p" + i;
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,83 @@
+package com.demo.aspect;
+
+import com.demo.annotation.RedisSemaphore;
+import com.demo.redis.LockKeyStrategy;
+import com.demo.redis.LockMetrics;
+import com.demo.redis.RedisCircuitBreaker;
+import com.demo.redis.RedisLockUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.aspect.RedisSemaphoreAspect
+ * @description @RedisSemaphore切面.获取许可失败时与@RedisLock一致,不执行目标方法,返回null
+ * @date 2019/9/24 20:40
+ */
+@Aspect
+@Component
+@Slf4j
+public class RedisSemaphoreAspect {
+    @Autowired
+    private RedisLockUtils redisLockUtils;
+    @Autowired
+    private LockMetrics lockMetrics;
+    @Autowired
+    private LockKeyStrategy keyStrategy;
+
+    /**
+     * 方法上注解的解析结果缓存
+     */
+    private final ConcurrentMap<Method, RedisLockMetadata<RedisSemaphore>> metadataCache = new ConcurrentHashMap<>();
+
+    @Pointcut("@annotation(com.demo.annotation.RedisSemaphore)")
+    public void redisSemaphorePointCut() {
+    }
+
+    @Around("redisSemaphorePointCut()")
+    public Object around(ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
+        Method method = ((MethodSignature) proceedingJoinPoint.getSignature()).getMethod();
+        RedisLockMetadata<RedisSemaphore> metadata = metadataCache.computeIfAbsent(method, m -> {
+            RedisSemaphore redisSemaphore = m.getAnnotation(RedisSemaphore.class);
+            return new RedisLockMetadata<>(m, redisSemaphore, redisSemaphore.value(), redisSemaphore.key());
+        });
+        RedisSemaphore annotation = metadata.getAnnotation();
+        //业务key,由RedisLockUtils转换为Redis中的key
+        String key = metadata.resolveKey(proceedingJoinPoint.getArgs());
+
+        String permitId = redisLockUtils.tryAcquirePermit(key, annotation.permits(),
+                annotation.waitTime(), annotation.leaseTime(), annotation.timeUnit());
+        if (permitId == null) {
+            log.debug("Thread:{}获取许可{}失败", Thread.currentThread().getId(), key);
+            return null;
+        }
+        long acquiredNanos = System.nanoTime();
+        try {
+            return proceedingJoinPoint.proceed();
+        } finally {
+            lockMetrics.recordHold(keyStrategy.apply(key), System.nanoTime() - acquiredNanos);
+            try {
+                if (!redisLockUtils.releasePermit(key, permitId)) {
+                    log.warn("许可{}在释放前已过期: {}", key, permitId);
+                }
+            } catch (RuntimeException e) {
+                //Redis不可用时不覆盖业务方法的结果,许可在过期后自动失效
+                if (!RedisCircuitBreaker.isUnavailable(e)) {
+                    throw e;
+                }
+                log.warn("Redis不可用,许可{}未释放,将在过期后自动失效: {}", key, permitId);
+            }
+        }
+    }
+}
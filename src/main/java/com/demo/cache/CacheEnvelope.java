@@ -0,0 +1,41 @@
+package com.demo.cache;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.cache.CacheEnvelope
+ * @description 缓存值的包装.记录逻辑过期时间和加载耗时,Redis中的实际过期时间比逻辑过期时间长,
+ * 逻辑过期后到实际过期前的值作为旧值,重新加载期间返回给其他调用方
+ * @date 2019/10/2 20:10
+ */
+@Getter
+public class CacheEnvelope implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Object value;
+    /**
+     * 逻辑过期时间,毫秒时间戳
+     */
+    private long expireAt;
+    /**
+     * 加载耗时,毫秒.提前刷新的概率与之成正比
+     */
+    private long loadMillis;
+
+    /**
+     * 反序列化使用
+     */
+    private CacheEnvelope() {
+    }
+
+    CacheEnvelope(Object value, long expireAt, long loadMillis) {
+        this.value = value;
+        this.expireAt = expireAt;
+        this.loadMillis = loadMillis;
+    }
+}
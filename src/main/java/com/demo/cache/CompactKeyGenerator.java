@@ -0,0 +1,252 @@
+package com.demo.cache;
+
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.context.expression.AnnotatedElementKey;
+
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.cache.CompactKeyGenerator
+ * @description 缓存key生成器.格式为 方法前缀:参数1:参数2...
+ * 方法前缀为 类名简称.方法名#签名哈希,每个方法只计算一次,签名哈希区分同名的类和重载的方法;
+ * 参数之间用:分隔,字符串中的\:,[]#用\转义后原样写入;其他值写为\加类型标记再加值,如\i1(Integer)、\l1(Long)、\ztrue(Boolean),
+ * null写为\0;对象数组写为[元素,元素],基本类型数组写为\类型标记[元素,元素].字符串中的\都已转义,类型标记不会与字符串混淆,
+ * f(1)、f(1L)、f("1")得到不同的key,不同的参数列表不会得到相同的key;
+ * 参数部分超过maxLength时换为#加SHA-256的十六进制,key的长度固定;单个参数就超过maxLength时不转义,改为带长度写入后哈希.
+ * 拼接使用线程复用的StringBuilder,除参数自身的toString外只分配结果字符串
+ * @date 2019/10/4 20:10
+ */
+public class CompactKeyGenerator implements KeyGenerator {
+
+    private static final char SEPARATOR = ':';
+    private static final char ESCAPE = '\\';
+    private static final char HASHED = '#';
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * 复用的StringBuilder超过这个容量后丢弃,避免个别超长的key长期占用内存
+     */
+    private static final int MAX_RETAINED_CAPACITY = 4096;
+
+    private final int maxLength;
+    /**
+     * 方法前缀.目标类就是方法所在类时(绝大多数情况)按Method缓存,否则按方法和目标类缓存
+     */
+    private final ConcurrentMap<Method, String> prefixes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<AnnotatedElementKey, String> inheritedPrefixes = new ConcurrentHashMap<>();
+    private final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(128));
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //每个Java平台都必须提供SHA-256
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * @param [maxLength]
+     * @author YiHaoXing
+     * @description maxLength为参数部分的最大长度,小于等于0时不哈希
+     * @date 20:15 2019/10/4
+     **/
+    public CompactKeyGenerator(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        String prefix = prefix(target.getClass(), method);
+        if (params.length == 0) {
+            return prefix;
+        }
+        StringBuilder sb = builders.get();
+        sb.setLength(0);
+        sb.append(prefix);
+        int start = sb.length();
+        for (Object param : params) {
+            sb.append(SEPARATOR);
+            appendParam(sb, param);
+        }
+        String key = maxLength > 0 && sb.length() - start - 1 > maxLength ? hashed(prefix, sb, start + 1) : sb.toString();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            builders.remove();
+        }
+        return key;
+    }
+
+    private String prefix(Class<?> targetClass, Method method) {
+        if (targetClass == method.getDeclaringClass()) {
+            String prefix = prefixes.get(method);
+            return prefix != null ? prefix : prefixes.computeIfAbsent(method, m -> newPrefix(targetClass, m));
+        }
+        return inheritedPrefixes.computeIfAbsent(new AnnotatedElementKey(method, targetClass), k -> newPrefix(targetClass, method));
+    }
+
+    private static String newPrefix(Class<?> targetClass, Method method) {
+        StringBuilder signature = new StringBuilder(targetClass.getName()).append('.').append(method.getName()).append('(');
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            signature.append(parameterType.getName()).append(',');
+        }
+        char[] hash = new char[8];
+        int h = signature.toString().hashCode();
+        for (int i = hash.length - 1; i >= 0; i--) {
+            hash[i] = HEX[h & 0xF];
+            h >>>= 4;
+        }
+        return targetClass.getSimpleName() + '.' + method.getName() + HASHED + new String(hash);
+    }
+
+    private void appendParam(StringBuilder sb, Object param) {
+        if (param instanceof String) {
+            appendEscaped(sb, (String) param);
+        } else if (param == null) {
+            sb.append(ESCAPE).append('0');
+        } else if (param.getClass().isArray()) {
+            appendArray(sb, param);
+        } else if (param instanceof Long || param instanceof Integer || param instanceof Short || param instanceof Byte) {
+            sb.append(ESCAPE).append(tag(param.getClass())).append(((Number) param).longValue());
+        } else if (param instanceof Boolean) {
+            sb.append(ESCAPE).append(tag(Boolean.class)).append(((Boolean) param).booleanValue());
+        } else if (param instanceof Enum) {
+            //带方法体的枚举常量是枚举的子类,按instanceof判断
+            sb.append(ESCAPE).append('e');
+            appendEscaped(sb, ((Enum<?>) param).name());
+        } else {
+            sb.append(ESCAPE).append(tag(param.getClass()));
+            appendEscaped(sb, param.toString());
+        }
+    }
+
+    /**
+     * 包装类型和基本类型使用相同的标记,其他类型为x
+     */
+    private static char tag(Class<?> type) {
+        if (type == Integer.class || type == int.class) {
+            return 'i';
+        } else if (type == Long.class || type == long.class) {
+            return 'l';
+        } else if (type == Short.class || type == short.class) {
+            return 's';
+        } else if (type == Byte.class || type == byte.class) {
+            return 'b';
+        } else if (type == Boolean.class || type == boolean.class) {
+            return 'z';
+        } else if (type == Character.class || type == char.class) {
+            return 'c';
+        } else if (type == Double.class || type == double.class) {
+            return 'd';
+        } else if (type == Float.class || type == float.class) {
+            return 'f';
+        }
+        return 'x';
+    }
+
+    private void appendArray(StringBuilder sb, Object array) {
+        if (array instanceof Object[]) {
+            //元素各自带类型标记
+            sb.append('[');
+            Object[] values = (Object[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendParam(sb, values[i]);
+            }
+            sb.append(']');
+            return;
+        }
+        sb.append(ESCAPE).append(tag(array.getClass().getComponentType())).append('[');
+        if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            for (int i = 0; i < values.length; i++) {
+                sb.append(i > 0 ? "," : "").append(values[i]);
+            }
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            for (int i = 0; i < values.length; i++) {
+                sb.append(i > 0 ? "," : "").append(values[i]);
+            }
+        } else if (array instanceof byte[]) {
+            //按十六进制写,不加分隔符
+            for (byte value : (byte[]) array) {
+                sb.append(HEX[(value >> 4) & 0xF]).append(HEX[value & 0xF]);
+            }
+        } else if (array instanceof char[]) {
+            appendEscaped(sb, new String((char[]) array));
+        } else {
+            //其他基本类型的数组
+            int length = java.lang.reflect.Array.getLength(array);
+            for (int i = 0; i < length; i++) {
+                sb.append(i > 0 ? "," : "").append(java.lang.reflect.Array.get(array, i));
+            }
+        }
+        sb.append(']');
+    }
+
+    private void appendEscaped(StringBuilder sb, String value) {
+        int length = value.length();
+        if (maxLength > 0 && length > maxLength) {
+            //整个key一定会被哈希,不需要可读,写为\'长度'原文,省去逐个字符检查
+            sb.append(ESCAPE).append('\'').append(length).append('\'').append(value);
+            return;
+        }
+        int first = 0;
+        while (first < length && !special(value.charAt(first))) {
+            first++;
+        }
+        //没有需要转义的字符时整段复制.append(CharSequence, start, end)逐个字符调用charAt,很慢
+        if (first == length) {
+            sb.append(value);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (special(c)) {
+                sb.append(ESCAPE);
+            }
+            sb.append(c);
+        }
+    }
+
+    private static boolean special(char c) {
+        //需要转义的字符都不大于],字母可以一次比较排除
+        return c <= ']' && (c == ESCAPE || c == SEPARATOR || c == ',' || c == '[' || c == ']' || c == HASHED);
+    }
+
+    /**
+     * @param [prefix, key, from]
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description key中from之后的参数部分换为SHA-256的十六进制.参数可能来自外部输入,非加密哈希可以构造碰撞,
+     * 让不同的参数读到同一个缓存值;各节点需要得到相同的key,不能用随机种子.按UTF-16逐字符哈希,不经过字符集编码
+     * @date 20:30 2019/10/4
+     **/
+    private String hashed(String prefix, StringBuilder key, int from) {
+        int length = key.length() - from;
+        byte[] bytes = new byte[length * 2];
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(from + i);
+            bytes[i * 2] = (byte) (c >> 8);
+            bytes[i * 2 + 1] = (byte) c;
+        }
+        MessageDigest digest = digests.get();
+        digest.reset();
+        byte[] hash = digest.digest(bytes);
+        char[] chars = new char[prefix.length() + 2 + hash.length * 2];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        chars[prefix.length()] = SEPARATOR;
+        chars[prefix.length() + 1] = HASHED;
+        int offset = prefix.length() + 2;
+        for (byte value : hash) {
+            chars[offset++] = HEX[(value >> 4) & 0xF];
+            chars[offset++] = HEX[value & 0xF];
+        }
+        return new String(chars);
+    }
+}
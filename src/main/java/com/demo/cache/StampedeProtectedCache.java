@@ -0,0 +1,354 @@
+package com.demo.cache;
+
+import com.demo.redis.RedisLockUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.cache.StampedeProtectedCache
+ * @description 防击穿的缓存.值以CacheEnvelope保存,带逻辑过期时间,通过@Cacheable(sync = true)即get(key, valueLoader)使用时:
+ * 1.同一节点同一个key只有一个线程去加载,其他线程等它的结果;
+ * 2.节点之间用LUA锁保证只有一个加载者,没有旧值时其他节点不加锁,轮询加载者写入的值,最多等待lockWaitMillis;
+ * 超时后再检查一次值并尝试一次加锁,仍拿不到锁时抛出ValueRetrievalException,不在锁外加载;
+ * 3.已有旧值时拿不到锁直接返回旧值,不等待;
+ * 4.提前刷新(XFetch):到期前每次读取以 加载耗时*beta*-ln(随机数) 的概率提前加载,热点key在过期前就被刷新.
+ * 普通的get(key)把逻辑过期的值当作不存在,没有防击穿效果
+ * @date 2019/10/2 20:20
+ */
+@Slf4j
+public class StampedeProtectedCache implements Cache {
+
+    /**
+     * 加载锁的key前缀,后接 缓存名::key
+     */
+    public static final String LOCK_KEY_PREFIX = "cache-lock:";
+    /**
+     * 等待其他节点加载时读取值的间隔.以毫秒为单位
+     */
+    private static final long POLL_BASE_MILLIS = 10L;
+    private static final long POLL_MAX_MILLIS = 100L;
+
+    private final Cache delegate;
+    private final ObjectProvider<RedisLockUtils> redisLockUtils;
+    private final Settings settings;
+    /**
+     * 本节点正在加载的key
+     */
+    private final ConcurrentMap<Object, CompletableFuture<CacheEnvelope>> loading = new ConcurrentHashMap<>();
+
+    StampedeProtectedCache(Cache delegate, ObjectProvider<RedisLockUtils> redisLockUtils, Settings settings) {
+        this.delegate = delegate;
+        this.redisLockUtils = redisLockUtils;
+        this.settings = settings;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheEnvelope envelope = envelope(key);
+        if (envelope == null || envelope.getExpireAt() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return new SimpleValueWrapper(envelope.getValue());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return (T) getEnvelope(key, valueLoader).getValue();
+    }
+
+    /**
+     * @param [key]
+     * @return com.demo.cache.CacheEnvelope
+     * @author YiHaoXing
+     * @description 读取值的包装,包括逻辑过期的旧值.不存在或读取失败返回null
+     * @date 20:30 2019/10/6
+     **/
+    public CacheEnvelope getEnvelope(Object key) {
+        return envelope(key);
+    }
+
+    /**
+     * @param [key, valueLoader]
+     * @return com.demo.cache.CacheEnvelope
+     * @author YiHaoXing
+     * @description 与get(key, valueLoader)相同,返回值的包装.返回旧值时逻辑过期时间已过,调用方可据此决定是否在本地缓存
+     * @date 20:32 2019/10/6
+     **/
+    public CacheEnvelope getEnvelope(Object key, Callable<?> valueLoader) {
+        CacheEnvelope envelope = envelope(key);
+        if (envelope != null && !shouldRefresh(envelope)) {
+            return envelope;
+        }
+        CompletableFuture<CacheEnvelope> future = new CompletableFuture<>();
+        CompletableFuture<CacheEnvelope> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            if (envelope != null) {
+                //本节点已有线程在刷新
+                return envelope;
+            }
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            CacheEnvelope loaded = envelope == null ? loadMissing(key, valueLoader) : refresh(key, envelope, valueLoader);
+            future.complete(loaded);
+            return loaded;
+        } catch (RuntimeException | Error e) {
+            //Error也要完成future,否则本节点等待同一个key的线程永远阻塞
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, wrap(value, 0L));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, wrap(value, 0L));
+        if (existing == null || !(existing.get() instanceof CacheEnvelope)) {
+            return existing;
+        }
+        return new SimpleValueWrapper(((CacheEnvelope) existing.get()).getValue());
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    /**
+     * @param [key, valueLoader]
+     * @return com.demo.cache.CacheEnvelope
+     * @author YiHaoXing
+     * @description 没有旧值时加载.拿不到锁时说明其他节点正在加载,不加锁轮询它写入的值,
+     * 这样加载者释放锁后所有等待者同时读到新值,而不是依次加锁、检查、释放.
+     * 等待lockWaitMillis后仍没有值时再尝试一次加锁(加载者可能已失败),仍拿不到则抛出ValueRetrievalException
+     * @date 20:35 2019/10/2
+     **/
+    private CacheEnvelope loadMissing(Object key, Callable<?> valueLoader) {
+        String lockKey = lockKey(key);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.lockWaitMillis);
+        CacheEnvelope envelope = loadIfLocked(key, lockKey, valueLoader);
+        if (envelope != null) {
+            return envelope;
+        }
+        try {
+            int attempt = 0;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, pollNanos(attempt++)));
+                envelope = envelope(key);
+                if (envelope != null) {
+                    return envelope;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        envelope = loadIfLocked(key, lockKey, valueLoader);
+        if (envelope != null) {
+            return envelope;
+        }
+        throw new ValueRetrievalException(key, valueLoader,
+                new TimeoutException("Wait loader of " + lockKey + " timeout after " + settings.lockWaitMillis + "ms"));
+    }
+
+    /**
+     * @param [key, lockKey, valueLoader]
+     * @return com.demo.cache.CacheEnvelope
+     * @author YiHaoXing
+     * @description 不等待地加锁,拿到锁后再读一次值(其他节点可能刚加载完成),没有值才加载.锁被占用返回null.
+     * 锁不可用时Redis中的值同样不可用,与CacheErrorHandler一致退化为本节点加载
+     * @date 20:36 2019/10/2
+     **/
+    private CacheEnvelope loadIfLocked(Object key, String lockKey, Callable<?> valueLoader) {
+        String token;
+        try {
+            token = redisLockUtils.getObject().acquireByLua(lockKey, settings.lockExpireMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            log.warn("Lock {} failed, load without lock: {}", lockKey, e.getMessage());
+            return load(key, valueLoader);
+        }
+        if (token == null) {
+            return null;
+        }
+        try {
+            CacheEnvelope envelope = envelope(key);
+            return envelope != null ? envelope : load(key, valueLoader);
+        } finally {
+            redisLockUtils.getObject().releaseLockByLua(lockKey, token);
+        }
+    }
+
+    /**
+     * 轮询间隔从POLL_BASE_MILLIS开始翻倍,最大POLL_MAX_MILLIS,在[间隔/2, 间隔]之间随机,避免各节点同时读取
+     */
+    private static long pollNanos(int attempt) {
+        long millis = Math.min(POLL_MAX_MILLIS, POLL_BASE_MILLIS << Math.min(attempt, 16));
+        return TimeUnit.MILLISECONDS.toNanos(millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+    }
+
+    /**
+     * @param [key, stale, valueLoader]
+     * @return com.demo.cache.CacheEnvelope
+     * @author YiHaoXing
+     * @description 已有旧值时刷新.拿不到锁或加载失败时返回旧值
+     * @date 20:40 2019/10/2
+     **/
+    private CacheEnvelope refresh(Object key, CacheEnvelope stale, Callable<?> valueLoader) {
+        String lockKey = lockKey(key);
+        String token;
+        try {
+            token = redisLockUtils.getObject().acquireByLua(lockKey, settings.lockExpireMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            log.warn("Lock {} failed, return stale value: {}", lockKey, e.getMessage());
+            return stale;
+        }
+        if (token == null) {
+            return stale;
+        }
+        try {
+            return load(key, valueLoader);
+        } catch (ValueRetrievalException e) {
+            log.warn("Refresh {} failed, return stale value: {}", lockKey, e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+            return stale;
+        } finally {
+            redisLockUtils.getObject().releaseLockByLua(lockKey, token);
+        }
+    }
+
+    private CacheEnvelope load(Object key, Callable<?> valueLoader) {
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        CacheEnvelope envelope = wrap(value, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        try {
+            delegate.put(key, envelope);
+        } catch (RuntimeException e) {
+            log.warn("Put {} into cache {} failed: {}", key, getName(), e.getMessage());
+        }
+        return envelope;
+    }
+
+    /**
+     * @param [envelope]
+     * @return boolean
+     * @author YiHaoXing
+     * @description XFetch:now - loadMillis * beta * ln(rand) >= expireAt 时刷新.加载越慢、越接近过期,提前刷新的概率越大
+     * @date 20:45 2019/10/2
+     **/
+    private boolean shouldRefresh(CacheEnvelope envelope) {
+        long now = System.currentTimeMillis();
+        if (settings.beta <= 0 || envelope.getLoadMillis() <= 0) {
+            return now >= envelope.getExpireAt();
+        }
+        double gap = -envelope.getLoadMillis() * settings.beta * Math.log(1.0D - ThreadLocalRandom.current().nextDouble());
+        return now + gap >= envelope.getExpireAt();
+    }
+
+    private CacheEnvelope envelope(Object key) {
+        ValueWrapper wrapper;
+        try {
+            wrapper = delegate.get(key);
+        } catch (RuntimeException e) {
+            //与CacheErrorHandler一致,读取失败当作不存在
+            log.error("Redis exception: {}", e.getMessage());
+            return null;
+        }
+        return wrapper != null && wrapper.get() instanceof CacheEnvelope ? (CacheEnvelope) wrapper.get() : null;
+    }
+
+    private CacheEnvelope wrap(Object value, long loadMillis) {
+        long expireAt = settings.ttlMillis > 0 ? System.currentTimeMillis() + settings.ttlMillis : Long.MAX_VALUE;
+        return new CacheEnvelope(value, expireAt, loadMillis);
+    }
+
+    private String lockKey(Object key) {
+        return LOCK_KEY_PREFIX + getName() + "::" + key;
+    }
+
+    /**
+     * 防击穿的参数
+     */
+    public static final class Settings {
+        /**
+         * 逻辑过期时间,0为不过期.以毫秒为单位
+         */
+        private final long ttlMillis;
+        /**
+         * 提前刷新的系数,越大越早刷新,0为不提前刷新
+         */
+        private final double beta;
+        /**
+         * 没有旧值时等待其他加载者写入值的时间,超时后仍拿不到锁则加载失败.以毫秒为单位
+         */
+        private final long lockWaitMillis;
+        /**
+         * 加载锁的过期时间,应大于加载耗时.以毫秒为单位
+         */
+        private final long lockExpireMillis;
+
+        public Settings(long ttlMillis, double beta, long lockWaitMillis, long lockExpireMillis) {
+            this.ttlMillis = ttlMillis;
+            this.beta = beta;
+            this.lockWaitMillis = lockWaitMillis;
+            this.lockExpireMillis = lockExpireMillis;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.demo.cache;
+
+import com.demo.redis.RedisLockUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.cache.StampedeProtectedCacheManager
+ * @description 为被包装的CacheManager中的缓存加上防击穿保护,见StampedeProtectedCache.
+ * 被包装的缓存的过期时间应为逻辑过期时间加上旧值的保留时间
+ * @date 2019/10/2 20:15
+ */
+public class StampedeProtectedCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+    private final ObjectProvider<RedisLockUtils> redisLockUtils;
+    private final StampedeProtectedCache.Settings settings;
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param [delegate, redisLockUtils, settings]
+     * @author YiHaoXing
+     * @description RedisLockUtils依赖RedisConfig中的lockRedisTemplate,延迟到第一次加载时获取,避免循环依赖
+     * @date 20:18 2019/10/2
+     **/
+    public StampedeProtectedCacheManager(CacheManager delegate, ObjectProvider<RedisLockUtils> redisLockUtils,
+                                         StampedeProtectedCache.Settings settings) {
+        this.delegate = delegate;
+        this.redisLockUtils = redisLockUtils;
+        this.settings = settings;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> new StampedeProtectedCache(target, redisLockUtils, settings));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
@@ -0,0 +1,265 @@
+package com.demo.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.cache.TwoTierCache
+ * @description 两级缓存.一级为本地Caffeine(W-TinyLFU淘汰,写入后定时过期),二级为被包装的Redis缓存.
+ * 读取先查本地,未命中再查Redis并放入本地;写入和删除先改Redis,再删本地并通知其他节点删除.
+ * 二级为StampedeProtectedCache时,本地条目最晚在值的逻辑过期时间失效,逻辑过期的旧值不放入本地;加载新值后通知其他节点删除本地的旧值.
+ * 本地缓存的key为key.toString(),与RedisCache生成Redis key的要求一致.本地缓存返回同一个对象,调用方不应修改
+ * @date 2019/10/3 20:20
+ */
+public class TwoTierCache implements Cache {
+
+    private final Cache delegate;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final Policy.VarExpiration<String, Object> localExpiration;
+    private final TwoTierCacheManager manager;
+    /**
+     * 二级缓存为StampedeProtectedCache时不为null
+     */
+    private final StampedeProtectedCache stampede;
+    private final long expireAfterWriteNanos;
+    /**
+     * 收到的删除次数.从Redis读取期间发生过删除时不放入本地,避免把删除前的旧值放回本地
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+
+    TwoTierCache(Cache delegate, TwoTierCacheManager manager, TwoTierCacheManager.Settings settings, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.manager = manager;
+        this.stampede = delegate instanceof StampedeProtectedCache ? (StampedeProtectedCache) delegate : null;
+        this.expireAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(settings.expireAfterWriteMillis);
+        //写入后默认expireAfterWriteMillis过期,带逻辑过期时间的值通过putLocal缩短
+        this.local = Caffeine.newBuilder()
+                .maximumSize(settings.maximumSize)
+                .expireAfter(new Expiry<String, Object>() {
+                    @Override
+                    public long expireAfterCreate(String key, Object value, long currentTime) {
+                        return expireAfterWriteNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Object value, long currentTime, long currentDuration) {
+                        return expireAfterWriteNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Object value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.localExpiration = local.policy().expireVariably().get();
+        String name = delegate.getName();
+        this.localHits = counter(meterRegistry, name, "local", "hit");
+        this.localMisses = counter(meterRegistry, name, "local", "miss");
+        this.remoteHits = counter(meterRegistry, name, "remote", "hit");
+        this.remoteMisses = counter(meterRegistry, name, "remote", "miss");
+        Gauge.builder("redis.cache.local.size", local, c -> c.estimatedSize()).tag("cache", name).register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    /**
+     * Redis一级的缓存
+     */
+    public Cache getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = String.valueOf(key);
+        Object value = local.getIfPresent(localKey);
+        if (value != null) {
+            localHits.increment();
+            return new SimpleValueWrapper(fromLocal(value));
+        }
+        localMisses.increment();
+        long generation = invalidations.get();
+        if (stampede != null) {
+            CacheEnvelope envelope = stampede.getEnvelope(key);
+            //与StampedeProtectedCache.get(key)一致,逻辑过期的值当作不存在
+            if (envelope == null || envelope.getExpireAt() <= System.currentTimeMillis()) {
+                remoteMisses.increment();
+                return null;
+            }
+            remoteHits.increment();
+            putLocal(localKey, envelope.getValue(), generation, envelope.getExpireAt());
+            return new SimpleValueWrapper(envelope.getValue());
+        }
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper == null) {
+            remoteMisses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        putLocal(localKey, wrapper.get(), generation, Long.MAX_VALUE);
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = String.valueOf(key);
+        Object cached = local.getIfPresent(localKey);
+        if (cached != null) {
+            localHits.increment();
+            return (T) fromLocal(cached);
+        }
+        localMisses.increment();
+        long generation = invalidations.get();
+        boolean[] loaded = new boolean[1];
+        Callable<T> loader = () -> {
+            loaded[0] = true;
+            return valueLoader.call();
+        };
+        T value;
+        long expireAt;
+        if (stampede != null) {
+            CacheEnvelope envelope = stampede.getEnvelope(key, loader);
+            value = (T) envelope.getValue();
+            expireAt = envelope.getExpireAt();
+        } else {
+            value = delegate.get(key, loader);
+            expireAt = Long.MAX_VALUE;
+        }
+        (loaded[0] ? remoteMisses : remoteHits).increment();
+        if (loaded[0]) {
+            //新值已写入Redis,其他节点本地的旧值不再有效.本节点接着放入新值,不删除本地
+            manager.publishEvict(getName(), localKey);
+        }
+        putLocal(localKey, value, generation, expireAt);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        evictLocal(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        if (existing == null) {
+            evictLocal(key);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        evictLocal(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        clearLocal();
+        manager.publishClear(getName());
+    }
+
+    /**
+     * 删除本地的key.由其他节点的删除通知触发
+     */
+    void invalidateLocal(String localKey) {
+        invalidations.incrementAndGet();
+        local.invalidate(localKey);
+    }
+
+    /**
+     * 清空本地缓存.由其他节点的清空通知触发
+     */
+    void clearLocal() {
+        invalidations.incrementAndGet();
+        local.invalidateAll();
+    }
+
+    private void evictLocal(Object key) {
+        String localKey = String.valueOf(key);
+        invalidateLocal(localKey);
+        manager.publishEvict(getName(), localKey);
+    }
+
+    /**
+     * @param [localKey, value, generation, expireAt]
+     * @return void
+     * @author YiHaoXing
+     * @description 放入本地.expireAt为值的逻辑过期时间(毫秒时间戳),本地条目不晚于它失效;已逻辑过期的旧值不放入,
+     * 下次读取回到二级缓存,由StampedeProtectedCache刷新
+     * @date 20:40 2019/10/6
+     **/
+    private void putLocal(String localKey, Object value, long generation, long expireAt) {
+        if (invalidations.get() != generation) {
+            return;
+        }
+        Object localValue = value == null ? NullValue.INSTANCE : value;
+        if (expireAt == Long.MAX_VALUE) {
+            local.put(localKey, localValue);
+        } else {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(expireAt - System.currentTimeMillis());
+            if (remainingNanos <= 0) {
+                return;
+            }
+            localExpiration.put(localKey, localValue, Math.min(remainingNanos, expireAfterWriteNanos), TimeUnit.NANOSECONDS);
+        }
+        //放入期间收到删除通知
+        if (invalidations.get() != generation) {
+            local.invalidate(localKey);
+        }
+    }
+
+    private static Object fromLocal(Object value) {
+        return value == NullValue.INSTANCE ? null : value;
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String tier, String result) {
+        return Counter.builder("redis.cache.gets")
+                .tag("cache", name)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,180 @@
+package com.demo.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.cache.TwoTierCacheManager
+ * @description 在被包装的CacheManager前加本地一级缓存,见TwoTierCache.
+ * 节点之间通过一个Redis频道通知删除,消息为 操作\n节点ID\n缓存名\nkey,节点忽略自己发出的消息.
+ * 订阅断开期间的通知会丢失,本地缓存最多在写入后expireAfterWriteMillis内读到旧值.
+ * 第一次获取缓存时才订阅,容器启动时不访问Redis(redis.lock.backend=memory时Redisson在首次使用时才连接)
+ * @date 2019/10/3 20:10
+ */
+@Slf4j
+public class TwoTierCacheManager implements CacheManager, DisposableBean, MessageListener<String> {
+
+    /**
+     * 删除通知的频道
+     */
+    public static final String INVALIDATION_CHANNEL = "redis-cache:invalidate";
+
+    private static final char EVICT = 'E';
+    private static final char CLEAR = 'C';
+    private static final char SEPARATOR = '\n';
+
+    private final CacheManager delegate;
+    private final RedissonClient redissonClient;
+    private final String nodeId;
+    private final MeterRegistry meterRegistry;
+    private final Settings settings;
+    private final ConcurrentMap<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+
+    private volatile RTopic topic;
+    private int listenerId;
+
+    public TwoTierCacheManager(CacheManager delegate, RedissonClient redissonClient, String nodeId, MeterRegistry meterRegistry,
+                               Settings settings) {
+        this.delegate = delegate;
+        this.redissonClient = redissonClient;
+        this.nodeId = nodeId;
+        this.meterRegistry = meterRegistry;
+        this.settings = settings;
+    }
+
+    @Override
+    public void destroy() {
+        RTopic subscribed = topic;
+        if (subscribed != null) {
+            subscribed.removeListener(listenerId);
+        }
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoTierCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        if (!subscribe()) {
+            //收不到其他节点的删除通知时不使用本地缓存
+            return target;
+        }
+        return caches.computeIfAbsent(name, n -> new TwoTierCache(target, this, settings, meterRegistry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    /**
+     * Redis一级的CacheManager
+     */
+    public CacheManager getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void onMessage(CharSequence channel, String message) {
+        int node = message.indexOf(SEPARATOR);
+        int name = message.indexOf(SEPARATOR, node + 1);
+        if (node != 1 || name < 0) {
+            log.warn("Unknown cache invalidation: {}", message);
+            return;
+        }
+        if (nodeId.equals(message.substring(node + 1, name))) {
+            return;
+        }
+        int keyStart = message.indexOf(SEPARATOR, name + 1);
+        String cacheName = message.substring(name + 1, keyStart < 0 ? message.length() : keyStart);
+        TwoTierCache cache = caches.get(cacheName);
+        if (cache == null) {
+            return;
+        }
+        if (message.charAt(0) == CLEAR) {
+            cache.clearLocal();
+        } else if (keyStart >= 0) {
+            cache.invalidateLocal(message.substring(keyStart + 1));
+        }
+    }
+
+    /**
+     * @param []
+     * @return boolean
+     * @author YiHaoXing
+     * @description 订阅删除通知,已订阅时直接返回.失败时返回false,下次获取缓存时重试
+     * @date 20:40 2019/10/7
+     **/
+    private boolean subscribe() {
+        if (topic != null) {
+            return true;
+        }
+        synchronized (this) {
+            if (topic == null) {
+                try {
+                    RTopic created = redissonClient.getTopic(INVALIDATION_CHANNEL, StringCodec.INSTANCE);
+                    listenerId = created.addListener(String.class, this);
+                    topic = created;
+                } catch (RuntimeException e) {
+                    log.warn("Subscribe cache invalidation failed, near cache bypassed: {}", e.getMessage());
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    void publishEvict(String cacheName, String localKey) {
+        publish(EVICT + "" + SEPARATOR + nodeId + SEPARATOR + cacheName + SEPARATOR + localKey);
+    }
+
+    void publishClear(String cacheName) {
+        publish(CLEAR + "" + SEPARATOR + nodeId + SEPARATOR + cacheName);
+    }
+
+    private void publish(String message) {
+        //Redis中的值已经修改,通知失败时其他节点的本地缓存到期后恢复一致
+        topic.publishAsync(message).whenComplete((receivers, e) -> {
+            if (e != null) {
+                log.warn("Publish cache invalidation failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 本地缓存的参数
+     */
+    public static final class Settings {
+        /**
+         * 每个缓存的本地条目数上限
+         */
+        final long maximumSize;
+        /**
+         * 写入本地后的过期时间.以毫秒为单位
+         */
+        final long expireAfterWriteMillis;
+
+        public Settings(long maximumSize, long expireAfterWriteMillis) {
+            this.maximumSize = maximumSize;
+            this.expireAfterWriteMillis = expireAfterWriteMillis;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.demo.config;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.nustaq.serialization.FSTConfiguration;
+import org.nustaq.serialization.FSTObjectInput;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.client.handler.State;
+import org.redisson.codec.FstCodec;
+import org.redisson.codec.JsonJacksonCodec;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.config.RedisCodec
+ * @description 可配置的编码方式.同一个编码同时提供Redisson的Codec和Spring的RedisSerializer,两边写入的数据可以互相读取.
+ * json:JsonJacksonCodec,带类型信息,可读但最慢; string:StringCodec,只能存字符串,锁和信号量的token使用这种;
+ * binary:FstCodec,二进制,体积和分配最小,需要显式开启.值必须实现Serializable,格式与类结构和FST版本绑定,
+ * 只有Java能读取;反序列化按数据中的类名实例化,Redis中的数据可被他人写入时不要使用
+ * @date 2019/9/30 20:10
+ */
+public enum RedisCodec {
+    JSON(new JsonJacksonCodec()),
+    STRING(StringCodec.INSTANCE),
+    BINARY(new FstCodec(FstSerializer.CONFIGURATION)) {
+        /**
+         * 直接读写byte[],不经过ByteBuf和InputStream的包装
+         */
+        @Override
+        public RedisSerializer<Object> serializer() {
+            return new FstSerializer();
+        }
+    };
+
+    private final Codec codec;
+
+    RedisCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Redisson使用的Codec
+     */
+    public Codec codec() {
+        return codec;
+    }
+
+    /**
+     * @param []
+     * @return org.springframework.data.redis.serializer.RedisSerializer<java.lang.Object>
+     * @author YiHaoXing
+     * @description 以Redisson的Codec实现的RedisSerializer
+     * @date 20:20 2019/9/30
+     **/
+    public RedisSerializer<Object> serializer() {
+        return new RedisSerializer<Object>() {
+            @Override
+            public byte[] serialize(Object value) {
+                if (value == null) {
+                    return null;
+                }
+                ByteBuf buf = null;
+                try {
+                    buf = codec.getValueEncoder().encode(value);
+                    return ByteBufUtil.getBytes(buf);
+                } catch (Exception e) {
+                    throw new SerializationException("Could not serialize with " + name(), e);
+                } finally {
+                    if (buf != null) {
+                        buf.release();
+                    }
+                }
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                if (bytes == null) {
+                    return null;
+                }
+                try {
+                    return codec.getValueDecoder().decode(Unpooled.wrappedBuffer(bytes), new State());
+                } catch (Exception e) {
+                    throw new SerializationException("Could not deserialize with " + name(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * 与FstCodec格式相同的RedisSerializer.每个线程复用一个FSTObjectInput,
+     * FSTConfiguration.asObject每次都会重新分配输入的缓冲区和对象表
+     */
+    private static final class FstSerializer implements RedisSerializer<Object> {
+        private static final FSTConfiguration CONFIGURATION = FSTConfiguration.createDefaultConfiguration();
+        private static final ThreadLocal<FSTObjectInput> INPUT = ThreadLocal.withInitial(() -> new FSTObjectInput(CONFIGURATION));
+
+        @Override
+        public byte[] serialize(Object value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return CONFIGURATION.asByteArray(value);
+            } catch (Exception e) {
+                throw new SerializationException("Could not serialize with " + BINARY.name(), e);
+            }
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            if (bytes == null) {
+                return null;
+            }
+            FSTObjectInput input = INPUT.get();
+            //反序列化过程中嵌套调用时不能复用同一个FSTObjectInput
+            INPUT.remove();
+            try {
+                input.resetForReuseUseArray(bytes);
+                return input.readObject();
+            } catch (Exception e) {
+                throw new SerializationException("Could not deserialize with " + BINARY.name(), e);
+            } finally {
+                INPUT.set(input);
+            }
+        }
+    }
+
+    /**
+     * @param [name]
+     * @return com.demo.config.RedisCodec
+     * @author YiHaoXing
+     * @description 按配置的名称获取,不区分大小写
+     * @date 20:25 2019/9/30
+     **/
+    public static RedisCodec of(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
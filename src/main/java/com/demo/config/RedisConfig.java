@@ -1,10 +1,20 @@
 package com.demo.config;
 
+import com.demo.cache.CompactKeyGenerator;
+import com.demo.cache.StampedeProtectedCache;
+import com.demo.cache.StampedeProtectedCacheManager;
+import com.demo.cache.TwoTierCacheManager;
+import com.demo.redis.LockTokenGenerator;
+import com.demo.redis.RedisLockUtils;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
@@ -13,13 +23,20 @@ import org.springframework.cache.interceptor.CacheErrorHandler;
 import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author YiHaoXing
  * @version 1.0.0
@@ -35,32 +52,95 @@ public class RedisConfig extends CachingConfigurerSupport {
     private LettuceConnectionFactory lettuceConnectionFactory;
 
     /**
-     * 生成key的策略
+     * 缓存值的编码.json/string/binary,见RedisCodec.默认json,binary需要显式开启
+     */
+    @Value("${redis.cache.codec:json}")
+    private String cacheCodec;
+    /**
+     * 缓存的过期时间,0为不过期.以秒为单位
+     */
+    @Value("${redis.cache.ttl-seconds:0}")
+    private long cacheTtlSeconds;
+    /**
+     * 缓存key中参数部分的最大长度,超过时换为固定长度的哈希,0为不哈希.见CompactKeyGenerator
+     */
+    @Value("${redis.cache.key.max-length:128}")
+    private int keyMaxLength;
+    /**
+     * 防击穿,见StampedeProtectedCache
+     */
+    @Value("${redis.cache.stampede.enabled:true}")
+    private boolean stampedeEnabled;
+    /**
+     * 过期后旧值的保留时间,重新加载期间返回旧值.以秒为单位
+     */
+    @Value("${redis.cache.stampede.stale-seconds:60}")
+    private long staleSeconds;
+    @Value("${redis.cache.stampede.beta:1.0}")
+    private double earlyRefreshBeta;
+    @Value("${redis.cache.stampede.lock-wait-millis:2000}")
+    private long loadLockWaitMillis;
+    @Value("${redis.cache.stampede.lock-expire-millis:10000}")
+    private long loadLockExpireMillis;
+    @Autowired
+    private ObjectProvider<RedisLockUtils> redisLockUtils;
+    /**
+     * 本地一级缓存,见TwoTierCache
+     */
+    @Value("${redis.cache.near.enabled:false}")
+    private boolean nearEnabled;
+    @Value("${redis.cache.near.maximum-size:10000}")
+    private long nearMaximumSize;
+    @Value("${redis.cache.near.expire-after-write-seconds:30}")
+    private long nearExpireSeconds;
+    @Lazy
+    @Autowired
+    private RedissonClient redissonClient;
+    @Autowired
+    private LockTokenGenerator tokenGenerator;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 生成key的策略.方法前缀只计算一次,参数部分超长时哈希,见CompactKeyGenerator
      *
      * @return
      */
     @Override
     @Bean
     public KeyGenerator keyGenerator() {
-        return (target, method, params) -> {
-            StringBuilder sb = new StringBuilder();
-            sb.append(target.getClass().getName());
-            sb.append(method.getName());
-            for (Object obj : params) {
-                sb.append(obj.toString());
-            }
-            return sb.toString();
-        };
+        return new CompactKeyGenerator(keyMaxLength);
     }
 
     /**
-     * 管理缓存
+     * 管理缓存.缓存值按redis.cache.codec编码,开启防击穿时包装为StampedeProtectedCacheManager,开启本地缓存时再包装为TwoTierCacheManager
      */
     @Override
     @Bean
     public CacheManager cacheManager() {
-        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.RedisCacheManagerBuilder.fromConnectionFactory(lettuceConnectionFactory);
-        return builder.build();
+        RedisCacheConfiguration cacheConfiguration = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(RedisCodec.of(cacheCodec).serializer()));
+        if (cacheTtlSeconds > 0) {
+            //防击穿时Redis中的过期时间包含旧值的保留时间
+            cacheConfiguration = cacheConfiguration.entryTtl(Duration.ofSeconds(stampedeEnabled ? cacheTtlSeconds + staleSeconds : cacheTtlSeconds));
+        }
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.RedisCacheManagerBuilder.fromConnectionFactory(lettuceConnectionFactory)
+                .cacheDefaults(cacheConfiguration);
+        if (!stampedeEnabled && !nearEnabled) {
+            return builder.build();
+        }
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.afterPropertiesSet();
+        CacheManager cacheManager = redisCacheManager;
+        if (stampedeEnabled) {
+            cacheManager = new StampedeProtectedCacheManager(cacheManager, redisLockUtils, new StampedeProtectedCache.Settings(
+                    TimeUnit.SECONDS.toMillis(cacheTtlSeconds), earlyRefreshBeta, loadLockWaitMillis, loadLockExpireMillis));
+        }
+        if (nearEnabled) {
+            cacheManager = new TwoTierCacheManager(cacheManager, redissonClient, tokenGenerator.getNodeId(), meterRegistry,
+                    new TwoTierCacheManager.Settings(nearMaximumSize, TimeUnit.SECONDS.toMillis(nearExpireSeconds)));
+        }
+        return cacheManager;
     }
 
     /**
@@ -89,6 +169,15 @@ public class RedisConfig extends CachingConfigurerSupport {
         return redisTemplate;
     }
 
+    /**
+     * 锁专用的RedisTemplate.key和value都按UTF-8字符串原样读写,
+     * 锁的value(token)和LUA脚本参数不再经过Jackson,没有类型信息和引号,与Redisson的StringCodec写入的数据一致
+     */
+    @Bean
+    public StringRedisTemplate lockRedisTemplate() {
+        return new StringRedisTemplate(lettuceConnectionFactory);
+    }
+
     /**
      * @return org.springframework.cache.interceptor.CacheErrorHandler
      * @author YiHaoXing
@@ -6,9 +6,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.Resource;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
@@ -26,12 +29,40 @@ import java.io.IOException;
  */
 @Configuration
 public class RedissonConfig {
+    /**
+     * Redisson配置文件.默认单机Redis,集群Redis使用classpath:redisson-cluster.yml
+     */
+    @Value("${redisson.config:classpath:redisson-single.yml}")
+    private Resource redissonConfig;
+
+    /**
+     * Redisson的默认编码.json/string/binary,见RedisCodec.配置后覆盖Redisson配置文件中的codec
+     */
+    @Value("${redisson.codec:}")
+    private String codec;
+
     @Bean
+    @ConditionalOnProperty(prefix = "redis.lock", name = "backend", havingValue = "redis", matchIfMissing = true)
     public RedissonClient redisson() throws IOException {
-        //单机Redis
-        Config config = Config.fromYAML(new ClassPathResource("redisson-single.yml").getInputStream());
-        //集群Redis
-        //Config config = Config.fromYAML(new ClassPathResource("redisson-cluster.yml").getInputStream());
+        return createRedisson();
+    }
+
+    /**
+     * value锁使用内存(redis.lock.backend=memory)时,Redisson在首次使用时才创建并连接,容器启动不依赖Redis.
+     * 注入RedissonClient的地方都需要加@Lazy,否则注入时就会创建
+     */
+    @Bean
+    @Lazy
+    @ConditionalOnProperty(prefix = "redis.lock", name = "backend", havingValue = "memory")
+    public RedissonClient lazyRedisson() throws IOException {
+        return createRedisson();
+    }
+
+    private RedissonClient createRedisson() throws IOException {
+        Config config = Config.fromYAML(redissonConfig.getInputStream());
+        if (!codec.isEmpty()) {
+            config.setCodec(RedisCodec.of(codec).codec());
+        }
         RedissonClient redissonClient = Redisson.create(config);
         return redissonClient;
     }
@@ -0,0 +1,33 @@
+package com.demo.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.controller.CacheController
+ * @description 测试缓存防击穿
+ * @date 2019/10/2 21:10
+ */
+@RestController
+@Slf4j
+public class CacheController {
+
+    /**
+     * 同时打开多个窗口(可以是不同节点)访问同一个id
+     * http://localhost:8080/cache/1
+     * 只有一个请求执行加载(日志中只有一次"加载"),其他请求等它加载完成后直接返回缓存的值.
+     * 过期前的一段时间内会被随机提前刷新,过期后重新加载期间其他请求拿到旧值
+     */
+    @GetMapping("/cache/{id}")
+    @Cacheable(value = "demo", key = "#id", sync = true)
+    public String cache(@PathVariable String id) throws InterruptedException {
+        log.info("Thread:{}加载{}",Thread.currentThread().getId(), id);
+        Thread.sleep(100);
+        return "value of " + id + " loaded at " + System.currentTimeMillis();
+    }
+}
@@ -1,6 +1,11 @@
 package com.demo.controller;
 
 import com.demo.annotation.RedisLock;
+import com.demo.annotation.RedisSemaphore;
+import com.demo.redis.DistributedLock;
+import com.demo.redis.DistributedLockFactory;
+import com.demo.redis.FencingToken;
+import com.demo.redis.LeaderElection;
 import com.demo.redis.RedisLockUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +14,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 
 /**
  * @author YiHaoXing
@@ -22,6 +28,10 @@ import java.util.concurrent.TimeUnit;
 public class LockController {
     @Autowired
     private RedisLockUtils redisLockUtils;
+    @Autowired
+    private DistributedLockFactory distributedLockFactory;
+    @Autowired(required = false)
+    private LeaderElection leaderElection;
     /**
      * 打开两个窗口,访问t1后立刻访问t2
      * http://localhost:8080/t1/F
@@ -182,4 +192,76 @@ public class LockController {
         return "t7 over";
     }
 
+    /**
+     * 同时打开三个窗口访问t8
+     * http://localhost:8080/t8
+     * 信号量有2个许可,前两个请求同时执行,第三个请求等待3S后仍拿不到许可,获取失败返回null
+     */
+    @GetMapping("/t8")
+    @RedisSemaphore(value = "S", permits = 2)
+    public String t8(){
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return "t8 over";
+    }
+
+    /**
+     * 访问t9,返回本次加锁的fencing token
+     * http://localhost:8080/t9
+     * 每次访问token都比上一次大.下游存储保存见过的最大token,收到更小token的写入时拒绝
+     */
+    @GetMapping("/t9")
+    @RedisLock(value = LOCK_KEY, fencing = true)
+    public String t9(){
+        return "t9 over, token: " + FencingToken.current();
+    }
+
+    /**
+     * 打开两个窗口,访问t10后立刻访问t11
+     * http://localhost:8080/t10/C
+     * http://localhost:8080/t11/C
+     * t10获取锁后在条件上等待(等待期间释放锁),t11获取到锁后signal,t10被唤醒并重新获取锁.
+     * 两个请求可以在不同的节点上
+     */
+    @GetMapping("/t10/{key}")
+    public String t10(@PathVariable String key) throws InterruptedException {
+        DistributedLock lock = distributedLockFactory.getLock(key);
+        lock.lock();
+        try {
+            Condition condition = lock.newCondition();
+            log.info("Thread:{}等待signal",Thread.currentThread().getId());
+            boolean signalled = condition.await(30, TimeUnit.SECONDS);
+            return "t10 over, signalled: " + signalled;
+        } finally {
+            lock.unlock();
+        }
+    }
+    @GetMapping("/t11/{key}")
+    public String t11(@PathVariable String key){
+        DistributedLock lock = distributedLockFactory.getLock(key);
+        lock.lock();
+        try {
+            lock.newCondition().signal();
+            log.info("Thread:{}signal",Thread.currentThread().getId());
+            return "t11 over";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 配置redis.lock.leader.enabled=true后启动多个节点,访问各节点的leader
+     * http://localhost:8080/leader
+     * 只有一个节点返回true.停止该节点后其他节点立刻接管,直接kill掉则最多等待一个租约时长
+     */
+    @GetMapping("/leader")
+    public String leader(){
+        if (leaderElection == null) {
+            return "leader election disabled";
+        }
+        return "node: " + leaderElection.getNodeId() + ", leader: " + leaderElection.isLeader();
+    }
 }
@@ -0,0 +1,41 @@
+package com.demo.controller;
+
+import com.demo.redis.LockContentionProfiler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.controller.LockStatsController
+ * @description 热点锁报告
+ * @date 2019/9/23 21:40
+ */
+@RestController
+public class LockStatsController {
+    @Autowired
+    private LockContentionProfiler contentionProfiler;
+
+    /**
+     * 等待时间最长的锁
+     * http://localhost:8080/lock/stats/top?n=10
+     * 失败次数最多的锁
+     * http://localhost:8080/lock/stats/top?n=10&by=failure
+     */
+    @GetMapping("/lock/stats/top")
+    public List<LockContentionProfiler.ContentionStat> top(@RequestParam(defaultValue = "10") int n,
+                                                           @RequestParam(defaultValue = "wait") String by) {
+        return "failure".equalsIgnoreCase(by) ? contentionProfiler.topByFailure(n) : contentionProfiler.topByWait(n);
+    }
+
+    @DeleteMapping("/lock/stats")
+    public String reset() {
+        contentionProfiler.reset();
+        return "reset";
+    }
+}
@@ -9,6 +9,8 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author YiHaoXing
  * @version 1.0.0
@@ -35,11 +37,10 @@ public class RedisLockController {
     @GetMapping("/a1/{key}")
     public String test1(@PathVariable String key){
 
-        String value = new StringBuilder().append(Thread.currentThread().getId()).append(Math.random()).toString();
-        boolean lock = false;
+        String value = null;
         try {
-            lock = redisLockUtils.getLockByLua(key, value, 30);
-            if(lock){
+            value = redisLockUtils.acquireByLua(key, 30, TimeUnit.SECONDS);
+            if(value != null){
                 log.info("Thread:{}获取锁成功",Thread.currentThread().getId());
                 log.info("Thread:{}执行业务逻辑中...",Thread.currentThread().getId());
                 Thread.sleep(5000);
@@ -49,7 +50,7 @@ public class RedisLockController {
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
-            if(lock){
+            if(value != null){
                 redisLockUtils.releaseLockByLua(key, value);
                 log.info("Thread:{}释放锁",Thread.currentThread().getId());
             }
@@ -59,11 +60,10 @@ public class RedisLockController {
     @GetMapping("/a2/{key}")
     public String test2(@PathVariable String key){
 
-        String value = new StringBuilder().append(Thread.currentThread().getId()).append(Math.random()).toString();
-        boolean lock = false;
+        String value = null;
         try {
-            lock = redisLockUtils.getLockByLua(key, value, 30);
-            if(lock){
+            value = redisLockUtils.acquireByLua(key, 30, TimeUnit.SECONDS);
+            if(value != null){
                 log.info("Thread:{}获取锁成功",Thread.currentThread().getId());
                 log.info("Thread:{}执行业务逻辑中...",Thread.currentThread().getId());
                 Thread.sleep(5000);
@@ -73,7 +73,7 @@ public class RedisLockController {
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
-            if(lock){
+            if(value != null){
                 redisLockUtils.releaseLockByLua(key, value);
                 log.info("Thread:{}释放锁",Thread.currentThread().getId());
             }
@@ -0,0 +1,128 @@
+package com.demo.redis;
+
+import lombok.Getter;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.DistributedLock
+ * @description java.util.concurrent.locks.Lock的分布式实现,由DistributedLockFactory创建.
+ * 基于Redisson可重入锁,未指定过期时间,持有期间由Redisson看门狗续期
+ * @date 2019/9/28 20:20
+ */
+public class DistributedLock implements Lock {
+
+    /**
+     * newCondition()使用的条件名
+     */
+    public static final String DEFAULT_CONDITION = "default";
+
+    @Getter
+    private final String lockKey;
+    private final RLock lock;
+    private final DistributedLockFactory factory;
+
+    DistributedLock(String lockKey, RLock lock, DistributedLockFactory factory) {
+        this.lockKey = lockKey;
+        this.lock = lock;
+        this.factory = factory;
+    }
+
+    @Override
+    public void lock() {
+        long start = System.nanoTime();
+        lock.lock();
+        acquired(start, true);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        acquired(start, true);
+    }
+
+    @Override
+    public boolean tryLock() {
+        long start = System.nanoTime();
+        return acquired(start, lock.tryLock());
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        return acquired(start, lock.tryLock(time, unit));
+    }
+
+    @Override
+    public void unlock() {
+        try {
+            lock.unlock();
+            factory.lockMetrics.recordRelease(lockKey);
+        } catch (IllegalMonitorStateException e) {
+            factory.lockMetrics.recordUnlockNotOwner(lockKey);
+            throw e;
+        }
+    }
+
+    /**
+     * 当前线程是否持有该锁
+     */
+    public boolean isHeldByCurrentThread() {
+        return lock.isHeldByCurrentThread();
+    }
+
+    /**
+     * @param []
+     * @return java.util.concurrent.locks.Condition
+     * @author YiHaoXing
+     * @description 默认名称的条件.同一把锁多次调用返回的条件共享同一个等待队列
+     * @date 20:30 2019/9/28
+     **/
+    @Override
+    public Condition newCondition() {
+        return newCondition(DEFAULT_CONDITION);
+    }
+
+    /**
+     * @param [name]
+     * @return java.util.concurrent.locks.Condition
+     * @author YiHaoXing
+     * @description 指定名称的条件.不同节点上同一把锁、同一名称的条件是同一个
+     * @date 20:32 2019/9/28
+     **/
+    public Condition newCondition(String name) {
+        return new RedisCondition(this, name);
+    }
+
+    RLock getLock() {
+        return lock;
+    }
+
+    LockChannelSubscriber channelSubscriber() {
+        return factory.channelSubscriber;
+    }
+
+    RedissonClient redissonClient() {
+        return factory.redissonClient;
+    }
+
+    LockTokenGenerator tokenGenerator() {
+        return factory.tokenGenerator;
+    }
+
+    DistributedLockFactory factory() {
+        return factory;
+    }
+
+    private boolean acquired(long startNanos, boolean locked) {
+        factory.lockMetrics.recordAcquire(lockKey, System.nanoTime() - startNanos, locked);
+        return locked;
+    }
+}
@@ -0,0 +1,90 @@
+package com.demo.redis;
+
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.DistributedLockFactory
+ * @description DistributedLock的工厂.同一个key返回同一个实例,缓存数量超过上限时淘汰任意一个.
+ * 锁的状态都在Redis中,被淘汰的实例仍然可以正常使用,之后再获取会创建新的实例
+ * @date 2019/9/28 20:10
+ */
+@Component
+public class DistributedLockFactory {
+
+    @Lazy
+    @Autowired
+    RedissonClient redissonClient;
+    @Autowired
+    LockChannelSubscriber channelSubscriber;
+    @Autowired
+    LockMetrics lockMetrics;
+    @Autowired
+    LockTokenGenerator tokenGenerator;
+    @Autowired
+    LuaScriptRegistry scriptRegistry;
+    @Autowired
+    RedisCircuitBreaker circuitBreaker;
+    @Autowired
+    private LockKeyStrategy keyStrategy;
+
+    /**
+     * 缓存的锁数量上限
+     */
+    @Value("${redis.lock.factory.max-locks:10000}")
+    private int maxLocks;
+
+    private final ConcurrentMap<String, DistributedLock> locks = new ConcurrentHashMap<>();
+    /**
+     * 条件的signal和signalAll脚本,所有锁共用
+     */
+    RedisScript<Long> signalScript;
+    RedisScript<Long> signalAllScript;
+
+    @PostConstruct
+    public void registerScripts() {
+        signalScript = scriptRegistry.register(RedisCondition.SIGNAL_SCRIPT_LUA, Long.class);
+        signalAllScript = scriptRegistry.register(RedisCondition.SIGNAL_ALL_SCRIPT_LUA, Long.class);
+    }
+
+    /**
+     * @param [lockKey]
+     * @return com.demo.redis.DistributedLock
+     * @author YiHaoXing
+     * @description 获取key对应的锁
+     * @date 20:15 2019/9/28
+     **/
+    public DistributedLock getLock(String lockKey) {
+        String key = keyStrategy.apply(lockKey);
+        DistributedLock lock = locks.get(key);
+        if (lock != null) {
+            return lock;
+        }
+        if (locks.size() >= maxLocks) {
+            Iterator<String> iterator = locks.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return locks.computeIfAbsent(key, k -> new DistributedLock(k, redissonClient.getLock(k), this));
+    }
+
+    /**
+     * 当前缓存的锁数量
+     */
+    public int size() {
+        return locks.size();
+    }
+}
@@ -0,0 +1,49 @@
+package com.demo.redis;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.FencingToken
+ * @description 当前线程持有的@RedisLock(fencing = true)锁的fencing token.
+ * 被注解的方法通过FencingToken.current()取得token,随写请求一起发给下游存储
+ * @date 2019/9/25 21:40
+ */
+public final class FencingToken {
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private FencingToken() {
+    }
+
+    /**
+     * @param []
+     * @return long
+     * @author YiHaoXing
+     * @description 当前线程的fencing token.不在fencing锁保护的方法内调用时抛出IllegalStateException
+     * @date 21:42 2019/9/25
+     **/
+    public static long current() {
+        Long token = CURRENT.get();
+        if (token == null) {
+            throw new IllegalStateException("Current thread does not hold a fenced lock");
+        }
+        return token;
+    }
+
+    /**
+     * @param [token]
+     * @return java.lang.Long
+     * @author YiHaoXing
+     * @description 绑定token到当前线程,返回之前绑定的token.方法结束时用返回值恢复,嵌套加锁时外层的token不会丢失
+     * @date 21:45 2019/9/25
+     **/
+    public static Long bind(Long token) {
+        Long previous = CURRENT.get();
+        if (token == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(token);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,353 @@
+package com.demo.redis;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.InMemoryLockBackend
+ * @description JVM内的锁存储,语义与RedisLockBackend一致,不访问网络.只在一个JVM内互斥,用于单元测试、并发压测和基准测试.
+ * 锁为ConcurrentHashMap中的租约,加锁、续期、删除和过期清理都在key所在的桶上原子执行;
+ * 每次访问按截止时间判断是否过期(与Redis的惰性删除相同),时间轮只负责清理无人访问的过期锁并通知等待者.
+ * 等待者按key的哈希分组,组内任意key释放都会唤醒该组的等待者,由调用方重试加锁.
+ * 加锁在key所在分组的监视器内执行,批量加锁和批量释放按分组下标顺序持有所有相关分组,其他线程看不到只加了一部分的批量锁
+ * @date 2019/10/6 20:50
+ */
+@Component
+@ConditionalOnProperty(prefix = "redis.lock", name = "backend", havingValue = "memory")
+public class InMemoryLockBackend implements LockBackend {
+
+    /**
+     * 等待者分组数量,2的幂
+     */
+    private static final int STRIPES = 64;
+
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> fences = new ConcurrentHashMap<>();
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Timer timer;
+
+    public InMemoryLockBackend() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "redis-lock-memory-expiry");
+            thread.setDaemon(true);
+            return thread;
+        }, 10, TimeUnit.MILLISECONDS, 512);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+    }
+
+    @Override
+    public boolean tryLock(String key, String value, long expireMillis) {
+        Lease created = new Lease(key, value, expireMillis);
+        return acquire(created, false) == created;
+    }
+
+    @Override
+    public Long tryLockOrTtl(String key, String value, long expireMillis) {
+        Lease created = new Lease(key, value, expireMillis);
+        Lease lease = acquire(created, false);
+        return lease == created ? null : lease.ttlMillis(System.nanoTime());
+    }
+
+    @Override
+    public long tryLockWithFence(String key, String value, long expireMillis) {
+        Lease created = new Lease(key, value, expireMillis);
+        Lease lease = acquire(created, true);
+        return lease == created ? lease.token : -1L - lease.ttlMillis(System.nanoTime());
+    }
+
+    /**
+     * 当前没有未过期的锁时放入created并登记到时间轮.返回created或已有的租约
+     */
+    private Lease acquire(Lease created, boolean fenced) {
+        long now = System.nanoTime();
+        Lease lease = leases.get(created.key);
+        if (lease != null && !lease.expired(now)) {
+            return lease;
+        }
+        synchronized (stripes[stripeIndex(created.key)]) {
+            lease = leases.compute(created.key, (k, existing) -> {
+                if (existing != null && !existing.expired(now)) {
+                    return existing;
+                }
+                if (fenced) {
+                    //在桶内自增,token的顺序与加锁顺序一致
+                    created.token = fences.computeIfAbsent(k, f -> new AtomicLong()).incrementAndGet();
+                }
+                return created;
+            });
+        }
+        if (lease == created) {
+            created.timeout = timer.newTimeout(created, Math.max(1L, created.expireAtNanos - now), TimeUnit.NANOSECONDS);
+        }
+        return lease;
+    }
+
+    @Override
+    public boolean unlock(String key, String value) {
+        Lease lease = leases.get(key);
+        if (lease == null || !lease.value.equals(value) || lease.expired(System.nanoTime()) || !leases.remove(key, lease)) {
+            return false;
+        }
+        Timeout timeout = lease.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        released(key);
+        return true;
+    }
+
+    @Override
+    public boolean tryLockAll(List<String> keys, String value, long expireMillis) {
+        if (new HashSet<>(keys).size() != keys.size()) {
+            //与脚本一致:重复的key第二次set nx失败
+            return false;
+        }
+        List<Lease> created = withStripes(keys, () -> {
+            long now = System.nanoTime();
+            for (String key : keys) {
+                Lease lease = leases.get(key);
+                if (lease != null && !lease.expired(now)) {
+                    return null;
+                }
+            }
+            List<Lease> acquired = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                Lease lease = new Lease(key, value, expireMillis);
+                leases.put(key, lease);
+                acquired.add(lease);
+            }
+            return acquired;
+        });
+        if (created == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        for (Lease lease : created) {
+            lease.timeout = timer.newTimeout(lease, Math.max(1L, lease.expireAtNanos - now), TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean[] unlockAll(List<String> keys, String value) {
+        boolean[] released = withStripes(keys, () -> {
+            boolean[] removed = new boolean[keys.size()];
+            long now = System.nanoTime();
+            for (int i = 0; i < removed.length; i++) {
+                String key = keys.get(i);
+                Lease lease = leases.get(key);
+                if (lease != null && lease.value.equals(value) && !lease.expired(now) && leases.remove(key, lease)) {
+                    Timeout timeout = lease.timeout;
+                    if (timeout != null) {
+                        timeout.cancel();
+                    }
+                    removed[i] = true;
+                }
+            }
+            return removed;
+        });
+        for (int i = 0; i < released.length; i++) {
+            if (released[i]) {
+                released(keys.get(i));
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public boolean[] renew(List<String> keys, List<String> values, long[] expireMillis) {
+        boolean[] renewed = new boolean[keys.size()];
+        long now = System.nanoTime();
+        for (int i = 0; i < renewed.length; i++) {
+            int index = i;
+            String value = values.get(i);
+            leases.computeIfPresent(keys.get(i), (k, existing) -> {
+                if (existing.value.equals(value) && !existing.expired(now)) {
+                    //时间轮到期时发现截止时间推后,会按剩余时间重新登记
+                    existing.expireAtNanos = now + TimeUnit.MILLISECONDS.toNanos(expireMillis[index]);
+                    renewed[index] = true;
+                }
+                return existing;
+            });
+        }
+        return renewed;
+    }
+
+    @Override
+    public ReleaseWaiter subscribe(String key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.waiters++;
+        }
+        return new StripeWaiter(stripe);
+    }
+
+    /**
+     * 当前的锁数量,包括已过期但还没有清理的
+     */
+    public int size() {
+        return leases.size();
+    }
+
+    private Stripe stripe(String key) {
+        return stripes[stripeIndex(key)];
+    }
+
+    private static int stripeIndex(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * 按下标从小到大持有keys所在的所有分组后执行action,不同批量操作之间不会死锁
+     */
+    private <T> T withStripes(List<String> keys, Supplier<T> action) {
+        int[] indexes = keys.stream().mapToInt(InMemoryLockBackend::stripeIndex).distinct().sorted().toArray();
+        return withStripes(indexes, 0, action);
+    }
+
+    private <T> T withStripes(int[] indexes, int from, Supplier<T> action) {
+        if (from == indexes.length) {
+            return action.get();
+        }
+        synchronized (stripes[indexes[from]]) {
+            return withStripes(indexes, from + 1, action);
+        }
+    }
+
+    /**
+     * 没有等待者时不进入同步块
+     */
+    private void released(String key) {
+        Stripe stripe = stripe(key);
+        if (stripe.waiters > 0) {
+            synchronized (stripe) {
+                stripe.generation++;
+                stripe.notifyAll();
+            }
+        }
+    }
+
+    private final class Lease implements TimerTask {
+        private final String key;
+        private final String value;
+        private volatile long expireAtNanos;
+        private volatile Timeout timeout;
+        /**
+         * 在放入表之前写入,之后只读
+         */
+        private long token;
+
+        private Lease(String key, String value, long expireMillis) {
+            this.key = key;
+            this.value = value;
+            this.expireAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(expireMillis);
+        }
+
+        private boolean expired(long now) {
+            return expireAtNanos - now <= 0;
+        }
+
+        /**
+         * 剩余过期时间,向上取整,避免等待者在最后不足1毫秒内空转
+         */
+        private long ttlMillis(long now) {
+            return Math.max(0L, (expireAtNanos - now + 999_999L) / 1_000_000L);
+        }
+
+        @Override
+        public void run(Timeout fired) {
+            boolean[] removed = new boolean[1];
+            Lease current = leases.computeIfPresent(key, (k, existing) -> {
+                if (existing == this && expired(System.nanoTime())) {
+                    removed[0] = true;
+                    return null;
+                }
+                return existing;
+            });
+            if (removed[0]) {
+                released(key);
+            } else if (current == this) {
+                //已续期
+                timeout = timer.newTimeout(this, Math.max(1L, expireAtNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static final class Stripe {
+        /**
+         * 只在同步块中修改
+         */
+        private volatile int waiters;
+        private long generation;
+    }
+
+    private static final class StripeWaiter implements ReleaseWaiter {
+        private final Stripe stripe;
+        private boolean closed;
+
+        private StripeWaiter(Stripe stripe) {
+            this.stripe = stripe;
+        }
+
+        @Override
+        public boolean isSubscribed() {
+            return true;
+        }
+
+        @Override
+        public long generation() {
+            synchronized (stripe) {
+                return stripe.generation;
+            }
+        }
+
+        @Override
+        public boolean await(long generation, long timeout, TimeUnit timeUnit) throws InterruptedException {
+            long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+            synchronized (stripe) {
+                while (stripe.generation == generation) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(stripe, remaining);
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                synchronized (stripe) {
+                    stripe.waiters--;
+                }
+            }
+        }
+    }
+}
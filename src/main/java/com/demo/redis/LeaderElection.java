@@ -0,0 +1,226 @@
+package com.demo.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LeaderElection
+ * @description 基于租约的leader选举.所有节点竞争同一个LUA锁,持有者每过三分之一租期续期一次;
+ * 其他节点在锁的剩余过期时间到达时重试,并订阅锁的释放频道,leader正常退出时立刻接管,宕机时最多等待一个租期.
+ * leader身份有本地截止时间:最后一次续期成功的请求发出时间加租期减去时钟漂移,续期失败超过截止时间后即使Redis中的锁
+ * 尚未过期也不再认为自己是leader,避免网络分区时出现两个leader.isLeader()只读本地状态,不访问Redis
+ * @date 2019/9/29 20:10
+ */
+@Component
+@ConditionalOnProperty(prefix = "redis.lock.leader", name = "enabled", havingValue = "true")
+@Slf4j
+public class LeaderElection {
+
+    /**
+     * 获取或续期租约的LUA脚本：锁不存在时获取,已由本节点持有时续期,成功返回nil;被其他节点持有时返回剩余过期时间(毫秒)
+     */
+    public static final String LEASE_SCRIPT_LUA = "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return nil end " +
+            "if redis.call('get', KEYS[1]) == ARGV[1] then redis.call('pexpire', KEYS[1], ARGV[2]) return nil end " +
+            "return redis.call('pttl', KEYS[1])";
+
+    /**
+     * 截止时间预留的时钟漂移:租期的1%再加2毫秒
+     */
+    private static final double CLOCK_DRIFT_FACTOR = 0.01D;
+    private static final long CLOCK_DRIFT_MILLIS = 2L;
+
+    @Autowired
+    private LuaScriptRegistry scriptRegistry;
+    @Lazy
+    @Autowired
+    private RedissonClient redissonClient;
+    @Autowired
+    private LockKeyStrategy keyStrategy;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private LockTokenGenerator tokenGenerator;
+
+    @Value("${redis.lock.leader.key:leader}")
+    private String key;
+    /**
+     * 租期.以毫秒为单位
+     */
+    @Value("${redis.lock.leader.lease-millis:10000}")
+    private long leaseMillis;
+
+    private String nodeId;
+    private String leaderKey;
+    private long renewIntervalMillis;
+    private long validityNanos;
+    private RedisScript<Long> leaseScript;
+    /**
+     * 租约始终在Redis中,不随redis.lock.backend切换,释放时直接执行比较删除并通知
+     */
+    private RedisScript<Long> releaseScript;
+    private ScheduledExecutorService scheduler;
+    private RTopic releaseTopic;
+    private int listenerId;
+
+    private volatile boolean leader;
+    private volatile long deadlineNanos;
+    /**
+     * 下一次获取或续期的任务,只在选举线程中修改
+     */
+    private ScheduledFuture<?> next;
+    private volatile boolean stopped;
+
+    @PostConstruct
+    public void start() {
+        nodeId = tokenGenerator.getNodeId();
+        leaderKey = keyStrategy.apply(key);
+        renewIntervalMillis = Math.max(1L, leaseMillis / 3);
+        validityNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis - (long) (leaseMillis * CLOCK_DRIFT_FACTOR) - CLOCK_DRIFT_MILLIS);
+        leaseScript = scriptRegistry.register(LEASE_SCRIPT_LUA, Long.class);
+        releaseScript = scriptRegistry.register(RedisLockUtils.UNLOCK_PUBLISH_SCRIPT_LUA, Long.class);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-lock-leader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        releaseTopic = redissonClient.getTopic(RedisLockUtils.RELEASE_CHANNEL_PREFIX + leaderKey, StringCodec.INSTANCE);
+        try {
+            //leader释放租约时立刻参与竞争,不等剩余过期时间
+            listenerId = releaseTopic.addListener(String.class, (channel, message) -> {
+                if (!stopped) {
+                    scheduler.execute(this::reschedule);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Subscribe leader release channel failed, followers wait for lease expiry: {}", e.getMessage());
+        }
+        scheduler.execute(this::tick);
+    }
+
+    /**
+     * @param []
+     * @return void
+     * @author YiHaoXing
+     * @description 停止选举.是leader时释放租约,其他节点收到释放通知后立刻接管
+     * @date 20:40 2019/9/29
+     **/
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        try {
+            releaseTopic.removeListener(listenerId);
+        } catch (Exception e) {
+            log.warn("Unsubscribe leader release channel failed: {}", e.getMessage());
+        }
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (leader) {
+            changeLeadership(false);
+            try {
+                scriptRegistry.execute(releaseScript, Collections.singletonList(leaderKey), nodeId);
+            } catch (Exception e) {
+                //租约到期后自动释放
+                log.warn("Release leader lease {} failed: {}", leaderKey, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param []
+     * @return boolean
+     * @author YiHaoXing
+     * @description 本节点当前是否是leader.只读本地状态,超过本地截止时间仍未续期成功时返回false
+     * @date 20:35 2019/9/29
+     **/
+    public boolean isLeader() {
+        return leader && deadlineNanos - System.nanoTime() > 0;
+    }
+
+    /**
+     * 本节点的ID,即租约锁的value
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 选举使用的key
+     */
+    public String getLeaderKey() {
+        return leaderKey;
+    }
+
+    private void reschedule() {
+        if (next != null) {
+            next.cancel(false);
+        }
+        tick();
+    }
+
+    private void tick() {
+        if (stopped) {
+            return;
+        }
+        long start = System.nanoTime();
+        long delayMillis;
+        try {
+            Long ttl = scriptRegistry.execute(leaseScript, Collections.singletonList(leaderKey), nodeId, leaseMillis);
+            if (ttl == null) {
+                deadlineNanos = start + validityNanos;
+                changeLeadership(true);
+                delayMillis = renewIntervalMillis;
+            } else {
+                changeLeadership(false);
+                //锁没有过期时间时按续期间隔重试
+                delayMillis = ttl > 0 ? ttl + 1 : renewIntervalMillis;
+            }
+        } catch (Exception e) {
+            log.warn("Renew leader lease {} failed: {}", leaderKey, e.getMessage());
+            if (leader && deadlineNanos - System.nanoTime() <= 0) {
+                changeLeadership(false);
+            }
+            //是leader时在截止时间前重试
+            delayMillis = leader ? Math.max(1L, Math.min(renewIntervalMillis,
+                    TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()))) : renewIntervalMillis;
+        }
+        if (!stopped) {
+            next = scheduler.schedule(this::tick, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void changeLeadership(boolean leader) {
+        if (this.leader == leader) {
+            return;
+        }
+        this.leader = leader;
+        log.info("Node {} {} leadership of {}", nodeId, leader ? "acquired" : "lost", leaderKey);
+        try {
+            eventPublisher.publishEvent(new LeadershipChangedEvent(this, leaderKey, nodeId, leader));
+        } catch (Exception e) {
+            log.error("Leadership changed listener failed: {}", e.getMessage());
+        }
+    }
+}
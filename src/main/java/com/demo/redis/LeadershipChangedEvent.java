@@ -0,0 +1,35 @@
+package com.demo.redis;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LeadershipChangedEvent
+ * @description 本节点成为leader或失去leader身份时发布的事件.在选举线程中同步发布,监听方法不应长时间阻塞
+ * @date 2019/9/29 20:20
+ */
+@Getter
+public class LeadershipChangedEvent extends ApplicationEvent {
+
+    /**
+     * 选举使用的key
+     */
+    private final String leaderKey;
+    /**
+     * 本节点的ID
+     */
+    private final String nodeId;
+    /**
+     * true:成为leader; false:失去leader身份
+     */
+    private final boolean leader;
+
+    public LeadershipChangedEvent(Object source, String leaderKey, String nodeId, boolean leader) {
+        super(source);
+        this.leaderKey = leaderKey;
+        this.nodeId = nodeId;
+        this.leader = leader;
+    }
+}
@@ -0,0 +1,171 @@
+package com.demo.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LeaseRenewalScheduler
+ * @description LUA锁的自动续期(看门狗).所有续期由一个共享的定时线程完成,
+ * 每次触发把到期需要续期的锁合并成一次LUA脚本调用(LockBackend.renew),而不是每个锁一个线程或一条命令
+ * @date 2019/9/15 20:30
+ */
+@Component
+@Slf4j
+public class LeaseRenewalScheduler {
+
+    /**
+     * 批量续期的LUA脚本：KEYS[i]的值等于ARGV[2i-1]时将过期时间重置为ARGV[2i]毫秒,返回每个key的续期结果
+     */
+    public static final String RENEW_SCRIPT_LUA = "local result = {} " +
+            "for i = 1, #KEYS do " +
+            "if redis.call('get', KEYS[i]) == ARGV[i * 2 - 1] then result[i] = redis.call('pexpire', KEYS[i], ARGV[i * 2]) " +
+            "else result[i] = 0 end " +
+            "end " +
+            "return result";
+
+    @Autowired
+    private LockBackend lockBackend;
+    @Autowired
+    private LockMetrics lockMetrics;
+    @Autowired
+    private LockKeyStrategy keyStrategy;
+
+    /**
+     * 检查是否有锁需要续期的间隔.以毫秒为单位
+     */
+    @Value("${redis.lock.renewal.tick-millis:100}")
+    private long tickMillis;
+
+    /**
+     * 可续期锁的最小过期时间与触发间隔的倍数.第一次续期最晚在三分之一过期时间再加一个触发间隔之后,
+     * 过期时间不足3个触发间隔时锁可能在续期前过期
+     */
+    private static final long MIN_LEASE_TICKS = 3L;
+
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-lock-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::renewDueLeases, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 可续期锁的最小过期时间.以毫秒为单位
+     */
+    public long getMinLeaseMillis() {
+        return tickMillis * MIN_LEASE_TICKS;
+    }
+
+    /**
+     * @param [lockKey, value, expireMillis]
+     * @return void
+     * @author YiHaoXing
+     * @description 登记一个已持有的锁,每过三分之一过期时间续期一次.过期时间应不小于getMinLeaseMillis()
+     * @date 20:41 2019/9/15
+     **/
+    public void register(String lockKey, String value, long expireMillis) {
+        leases.put(lockKey, new Lease(value, expireMillis));
+    }
+
+    /**
+     * @param [lockKey, value]
+     * @return void
+     * @author YiHaoXing
+     * @description 停止续期.只移除value匹配的登记
+     * @date 20:43 2019/9/15
+     **/
+    public void cancel(String lockKey, String value) {
+        leases.computeIfPresent(lockKey, (key, lease) -> lease.value.equals(value) ? null : lease);
+    }
+
+    /**
+     * 当前正在续期的锁数量
+     */
+    public int size() {
+        return leases.size();
+    }
+
+    private void renewDueLeases() {
+        long now = System.nanoTime();
+        List<Map.Entry<String, Lease>> due = new ArrayList<>();
+        leases.forEach((key, lease) -> {
+            if (now - lease.nextRenewalNanos >= 0) {
+                due.add(new AbstractMap.SimpleImmutableEntry<>(key, lease));
+            }
+        });
+        if (due.isEmpty()) {
+            return;
+        }
+        //集群模式下一个脚本只能操作同一个slot的key
+        for (List<Map.Entry<String, Lease>> group : keyStrategy.groupBySlot(due, Map.Entry::getKey)) {
+            renew(group, now);
+        }
+    }
+
+    private void renew(List<Map.Entry<String, Lease>> due, long now) {
+        List<String> keys = new ArrayList<>(due.size());
+        List<String> values = new ArrayList<>(due.size());
+        long[] expireMillis = new long[due.size()];
+        for (Map.Entry<String, Lease> entry : due) {
+            expireMillis[keys.size()] = entry.getValue().expireMillis;
+            keys.add(entry.getKey());
+            values.add(entry.getValue().value);
+        }
+        try {
+            boolean[] renewed = lockBackend.renew(keys, values, expireMillis);
+            for (int i = 0; i < keys.size(); i++) {
+                Lease lease = due.get(i).getValue();
+                if (renewed[i]) {
+                    lease.nextRenewalNanos = now + TimeUnit.MILLISECONDS.toNanos(lease.expireMillis) / 3;
+                } else {
+                    //锁已过期或被其他客户端持有,不再续期
+                    leases.remove(keys.get(i), lease);
+                    lockMetrics.recordLeaseLost(keys.get(i));
+                    log.warn("Lock {} lost before renewal", keys.get(i));
+                }
+            }
+        } catch (Exception e) {
+            //下次触发时重试
+            log.error("Renew {} leases failed: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    private static final class Lease {
+        private final String value;
+        private final long expireMillis;
+        private volatile long nextRenewalNanos;
+
+        private Lease(String value, long expireMillis) {
+            this.value = value;
+            this.expireMillis = expireMillis;
+            this.nextRenewalNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(expireMillis) / 3;
+        }
+    }
+}
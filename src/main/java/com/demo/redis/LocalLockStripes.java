@@ -0,0 +1,87 @@
+package com.demo.redis;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LocalLockStripes
+ * @description JVM内按锁名划分的本地锁.同一节点上竞争同一个key的线程先在本地排队,只有本地胜出的线程才去访问Redis.
+ * 每个本地锁记录持有和等待的线程数,归零时立即从表中移除,表的大小不超过同时在用的key数量,不会随key的种类增长
+ * @date 2019/9/12 21:40
+ */
+@Component
+public class LocalLockStripes {
+
+    private final ConcurrentMap<String, Stripe> stripes = new ConcurrentHashMap<>();
+
+    /**
+     * @param [lockKey, waitTime, timeUnit]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 获取本地锁,可重入
+     * @date 21:46 2019/9/12
+     **/
+    public boolean tryLock(String lockKey, long waitTime, TimeUnit timeUnit) throws InterruptedException {
+        Stripe stripe = retain(lockKey);
+        boolean locked = false;
+        try {
+            locked = stripe.lock.tryLock(waitTime, timeUnit);
+            return locked;
+        } finally {
+            if (!locked) {
+                release(lockKey);
+            }
+        }
+    }
+
+    /**
+     * @param [lockKey]
+     * @return void
+     * @author YiHaoXing
+     * @description 释放本地锁.当前线程未持有时抛出IllegalMonitorStateException
+     * @date 21:48 2019/9/12
+     **/
+    public void unlock(String lockKey) {
+        Stripe stripe = stripes.get(lockKey);
+        if (stripe == null) {
+            throw new IllegalMonitorStateException("Local lock " + lockKey + " is not held");
+        }
+        stripe.lock.unlock();
+        release(lockKey);
+    }
+
+    /**
+     * 当前在用的本地锁数量
+     */
+    public int size() {
+        return stripes.size();
+    }
+
+    private Stripe retain(String lockKey) {
+        return stripes.compute(lockKey, (key, stripe) -> {
+            if (stripe == null) {
+                stripe = new Stripe();
+            }
+            stripe.refs++;
+            return stripe;
+        });
+    }
+
+    private void release(String lockKey) {
+        stripes.computeIfPresent(lockKey, (key, stripe) -> --stripe.refs == 0 ? null : stripe);
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * 持有次数加等待线程数,只在ConcurrentHashMap的compute中修改
+         */
+        private int refs;
+    }
+}
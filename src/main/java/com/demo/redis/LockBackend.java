@@ -0,0 +1,110 @@
+package com.demo.redis;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LockBackend
+ * @description RedisLockUtils中value锁(SET NX PX + 比较删除)的存储.redis.lock.backend选择实现:
+ * redis为RedisLockBackend; memory为InMemoryLockBackend,不访问网络,用于测试和区分客户端与Redis各自的耗时.
+ * key为已经过LockKeyStrategy转换的key.Redisson锁和信号量不经过这里
+ * @date 2019/10/6 20:10
+ */
+public interface LockBackend {
+
+    /**
+     * @param [key, value, expireMillis]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 与SET key value NX PX expireMillis相同,获取成功返回true
+     * @date 20:15 2019/10/6
+     **/
+    boolean tryLock(String key, String value, long expireMillis);
+
+    /**
+     * @param [key, value, expireMillis]
+     * @return java.lang.Long
+     * @author YiHaoXing
+     * @description 获取成功返回null,失败返回锁的剩余过期时间(毫秒),锁没有过期时间时为-1
+     * @date 20:17 2019/10/6
+     **/
+    Long tryLockOrTtl(String key, String value, long expireMillis);
+
+    /**
+     * @param [key, value, expireMillis]
+     * @return long
+     * @author YiHaoXing
+     * @description 获取锁并生成fencing token.成功返回自增后的token(从1开始),失败返回-1-锁的剩余过期时间(毫秒).
+     * 计数器不过期,同一个key的token一直递增
+     * @date 20:19 2019/10/6
+     **/
+    long tryLockWithFence(String key, String value, long expireMillis);
+
+    /**
+     * @param [key, value]
+     * @return boolean
+     * @author YiHaoXing
+     * @description value匹配时删除并通知等待者,返回是否删除
+     * @date 20:21 2019/10/6
+     **/
+    boolean unlock(String key, String value);
+
+    /**
+     * @param [keys, value, expireMillis]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 批量加锁,原子操作.所有key都空闲时全部加锁并返回true,否则一个都不加锁.keys有重复时失败
+     * @date 21:00 2019/10/7
+     **/
+    boolean tryLockAll(List<String> keys, String value, long expireMillis);
+
+    /**
+     * @param [keys, value]
+     * @return boolean[]
+     * @author YiHaoXing
+     * @description 批量释放,原子操作.对每个key比较value后删除并通知等待者,按keys的顺序返回每个key是否释放
+     * @date 21:02 2019/10/7
+     **/
+    boolean[] unlockAll(List<String> keys, String value);
+
+    /**
+     * @param [keys, values, expireMillis]
+     * @return boolean[]
+     * @author YiHaoXing
+     * @description 批量续期.keys[i]的value等于values[i]时把过期时间重置为expireMillis[i],返回每个key是否续期成功
+     * @date 20:23 2019/10/6
+     **/
+    boolean[] renew(List<String> keys, List<String> values, long[] expireMillis);
+
+    /**
+     * @param [key]
+     * @return com.demo.redis.LockBackend.ReleaseWaiter
+     * @author YiHaoXing
+     * @description 等待key被释放.用完必须调用close()
+     * @date 20:25 2019/10/6
+     **/
+    ReleaseWaiter subscribe(String key);
+
+    /**
+     * 锁释放的等待者.先取generation,再尝试加锁,失败后await(generation),避免在两步之间错过释放通知
+     */
+    interface ReleaseWaiter extends AutoCloseable {
+
+        /**
+         * 是否能收到释放通知.不能时调用方应自行退避重试
+         */
+        boolean isSubscribed();
+
+        long generation();
+
+        /**
+         * 等待generation之后的释放通知.收到返回true,超时返回false
+         */
+        boolean await(long generation, long timeout, TimeUnit timeUnit) throws InterruptedException;
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,252 @@
+package com.demo.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LockChannelSubscriber
+ * @description 等待锁释放的订阅管理.使用Redisson的订阅连接(与Redisson锁的等待共用),
+ * 同一频道在本节点只订阅一次,最后一个等待者离开时取消订阅.
+ * 等待者可以只关心指定内容的消息(例如Condition的等待者ID),内容为BROADCAST的消息唤醒所有此类等待者
+ * @date 2019/9/18 21:15
+ */
+@Component
+@Slf4j
+public class LockChannelSubscriber {
+
+    /**
+     * 发给频道内所有等待者的消息内容
+     */
+    public static final String BROADCAST = "*";
+
+    @Lazy
+    @Autowired
+    private RedissonClient redissonClient;
+
+    private final ConcurrentMap<String, Channel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * @param [channel]
+     * @return com.demo.redis.LockChannelSubscriber.Waiter
+     * @author YiHaoXing
+     * @description 加入频道的等待者.用完必须调用Waiter.close()
+     * @date 21:22 2019/9/18
+     **/
+    public Waiter join(String channel) {
+        Channel entry = channels.compute(channel, (name, existing) -> {
+            Channel result = existing == null ? new Channel(name) : existing;
+            result.refs++;
+            return result;
+        });
+        entry.subscribe();
+        return new Waiter(entry, null);
+    }
+
+    /**
+     * @param [channel, payload]
+     * @return com.demo.redis.LockChannelSubscriber.Waiter
+     * @author YiHaoXing
+     * @description 加入频道,只等待内容为payload或BROADCAST的消息,通过Waiter.awaitPayload()等待
+     * @date 21:10 2019/9/28
+     **/
+    public Waiter join(String channel, String payload) {
+        Waiter waiter = join(channel);
+        synchronized (waiter.channel) {
+            waiter.channel.payloads.put(payload, Boolean.FALSE);
+        }
+        return new Waiter(waiter.channel, payload);
+    }
+
+    /**
+     * 当前订阅的频道数量
+     */
+    public int size() {
+        return channels.size();
+    }
+
+    private void leave(Channel entry) {
+        boolean[] removed = new boolean[1];
+        channels.computeIfPresent(entry.name, (name, existing) -> {
+            if (existing != entry || --existing.refs > 0) {
+                return existing;
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            entry.unsubscribe();
+        }
+    }
+
+    /**
+     * 一个频道的订阅.收到消息时唤醒本节点所有等待者
+     */
+    private final class Channel implements MessageListener<String> {
+        private final String name;
+        private final RTopic topic;
+        /**
+         * 引用数,只在ConcurrentHashMap的compute中修改
+         */
+        private int refs;
+        /**
+         * 收到的消息数,等待者据此判断等待期间是否有锁释放
+         */
+        private long generation;
+        /**
+         * 等待者关心的消息内容,收到后置为true
+         */
+        private final Map<String, Boolean> payloads = new HashMap<>();
+        private boolean subscribed;
+        private boolean unsubscribed;
+        private int listenerId;
+
+        private Channel(String name) {
+            this.name = name;
+            this.topic = redissonClient.getTopic(name, StringCodec.INSTANCE);
+        }
+
+        /**
+         * 同步等待订阅生效,之后发布的释放消息不会丢失.同一频道的其他等待者在监视器上等待订阅完成
+         */
+        private synchronized void subscribe() {
+            if (subscribed || unsubscribed) {
+                return;
+            }
+            try {
+                listenerId = topic.addListener(String.class, this);
+                subscribed = true;
+            } catch (Exception e) {
+                //订阅不可用时等待者退化为退避重试
+                log.warn("Subscribe {} failed: {}", name, e.getMessage());
+            }
+        }
+
+        private synchronized void unsubscribe() {
+            unsubscribed = true;
+            if (subscribed) {
+                subscribed = false;
+                topic.removeListenerAsync(listenerId).whenComplete((v, e) -> {
+                    if (e != null) {
+                        log.warn("Unsubscribe {} failed: {}", name, e.getMessage());
+                    }
+                });
+            }
+        }
+
+        @Override
+        public synchronized void onMessage(CharSequence channel, String message) {
+            generation++;
+            if (!payloads.isEmpty()) {
+                if (BROADCAST.equals(message)) {
+                    payloads.replaceAll((payload, received) -> Boolean.TRUE);
+                } else {
+                    payloads.replace(message, Boolean.TRUE);
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * @author YiHaoXing
+     * @description 频道的等待者.先取generation,再尝试加锁,失败后await(generation),避免在两步之间错过释放消息
+     * @date 21:35 2019/9/18
+     **/
+    public final class Waiter implements LockBackend.ReleaseWaiter {
+        private final Channel channel;
+        private final String payload;
+        private boolean closed;
+
+        private Waiter(Channel channel, String payload) {
+            this.channel = channel;
+            this.payload = payload;
+        }
+
+        /**
+         * 是否已订阅成功.未订阅时调用方应自行退避重试
+         */
+        @Override
+        public boolean isSubscribed() {
+            synchronized (channel) {
+                return channel.subscribed;
+            }
+        }
+
+        @Override
+        public long generation() {
+            synchronized (channel) {
+                return channel.generation;
+            }
+        }
+
+        /**
+         * @param [generation, timeout, timeUnit]
+         * @return boolean
+         * @author YiHaoXing
+         * @description 等待频道收到generation之后的新消息.收到返回true,超时返回false
+         * @date 21:40 2019/9/18
+         **/
+        @Override
+        public boolean await(long generation, long timeout, TimeUnit timeUnit) throws InterruptedException {
+            long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+            synchronized (channel) {
+                while (channel.generation == generation) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(channel, remaining);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * @param [timeout, timeUnit]
+         * @return boolean
+         * @author YiHaoXing
+         * @description 等待内容为payload或BROADCAST的消息.加入频道之后收到的都算,收到返回true,超时返回false
+         * @date 21:15 2019/9/28
+         **/
+        public boolean awaitPayload(long timeout, TimeUnit timeUnit) throws InterruptedException {
+            long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+            synchronized (channel) {
+                while (!Boolean.TRUE.equals(channel.payloads.get(payload))) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(channel, remaining);
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (payload != null) {
+                    synchronized (channel) {
+                        channel.payloads.remove(payload);
+                    }
+                }
+                leave(channel);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.demo.redis;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LockContentionProfiler
+ * @description 热点锁分析.按采样率抽取获取锁的记录,用Space-Saving算法分别统计等待时间最长和失败次数最多的锁,
+ * 每个统计最多保留capacity个锁名,内存占用与锁名的种类无关.统计值是估计值,error为可能多算的上限
+ * @date 2019/9/23 21:10
+ */
+@Component
+public class LockContentionProfiler {
+
+    /**
+     * 每个统计保留的锁名数量
+     */
+    @Value("${redis.lock.profiler.capacity:64}")
+    private int capacity;
+    /**
+     * 采样率,取值(0, 1]
+     */
+    @Value("${redis.lock.profiler.sample-rate:0.1}")
+    private double sampleRate;
+
+    private SpaceSaving waitSketch;
+    private SpaceSaving failureSketch;
+
+    @PostConstruct
+    public void init() {
+        waitSketch = new SpaceSaving(Math.max(1, capacity));
+        failureSketch = new SpaceSaving(Math.max(1, capacity));
+    }
+
+    /**
+     * @param [lockKey, waitNanos, acquired]
+     * @return void
+     * @author YiHaoXing
+     * @description 记录一次获取锁.未被采样时只有一次随机数的开销
+     * @date 21:18 2019/9/23
+     **/
+    public void record(String lockKey, long waitNanos, boolean acquired) {
+        if (sampleRate < 1.0D && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        waitSketch.offer(lockKey, waitNanos, acquired);
+        if (!acquired) {
+            failureSketch.offer(lockKey, 1L, false);
+        }
+    }
+
+    /**
+     * @param [n]
+     * @return java.util.List<com.demo.redis.LockContentionProfiler.ContentionStat>
+     * @author YiHaoXing
+     * @description 等待时间最长的n个锁
+     * @date 21:25 2019/9/23
+     **/
+    public List<ContentionStat> topByWait(int n) {
+        List<ContentionStat> stats = new ArrayList<>();
+        for (Counter counter : waitSketch.top(n)) {
+            stats.add(new ContentionStat(counter.key,
+                    scale(TimeUnit.NANOSECONDS.toMillis(counter.weight)),
+                    scale(TimeUnit.NANOSECONDS.toMillis(counter.error)),
+                    scale(counter.samples), scale(counter.failures)));
+        }
+        return stats;
+    }
+
+    /**
+     * @param [n]
+     * @return java.util.List<com.demo.redis.LockContentionProfiler.ContentionStat>
+     * @author YiHaoXing
+     * @description 获取失败次数最多的n个锁.waitMillis为该锁在等待时间统计中的值,不在其中时为0
+     * @date 21:27 2019/9/23
+     **/
+    public List<ContentionStat> topByFailure(int n) {
+        List<ContentionStat> stats = new ArrayList<>();
+        for (Counter counter : failureSketch.top(n)) {
+            Counter wait = waitSketch.get(counter.key);
+            long samples = wait == null ? counter.samples : wait.samples;
+            stats.add(new ContentionStat(counter.key,
+                    wait == null ? 0L : scale(TimeUnit.NANOSECONDS.toMillis(wait.weight)),
+                    scale(counter.error),
+                    scale(samples), scale(counter.weight)));
+        }
+        return stats;
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        waitSketch.clear();
+        failureSketch.clear();
+    }
+
+    /**
+     * 采样的计数换算为总数的估计值
+     */
+    private long scale(long sampled) {
+        return sampleRate < 1.0D ? Math.round(sampled / sampleRate) : sampled;
+    }
+
+    /**
+     * 一个锁的统计结果
+     */
+    @Getter
+    public static final class ContentionStat {
+        private final String lockKey;
+        /**
+         * 累计等待时间,毫秒
+         */
+        private final long waitMillis;
+        /**
+         * 排序依据可能多算的上限.按等待时间排序时为毫秒,按失败次数排序时为次数
+         */
+        private final long error;
+        private final long acquires;
+        private final long failures;
+        /**
+         * 失败率
+         */
+        private final double failureRate;
+
+        private ContentionStat(String lockKey, long waitMillis, long error, long acquires, long failures) {
+            this.lockKey = lockKey;
+            this.waitMillis = waitMillis;
+            this.error = error;
+            this.acquires = acquires;
+            this.failures = failures;
+            this.failureRate = acquires == 0 ? 0.0D : Math.min(1.0D, (double) failures / acquires);
+        }
+    }
+
+    /**
+     * 加权的Space-Saving.表满时新锁名替换权重最小的计数器,并继承其权重作为误差.
+     * 只有被采样的记录才会进入,因此直接加锁,替换时线性查找最小值
+     */
+    private static final class SpaceSaving {
+        private final int capacity;
+        private final Map<String, Counter> counters;
+
+        private SpaceSaving(int capacity) {
+            this.capacity = capacity;
+            this.counters = new HashMap<>(capacity * 2);
+        }
+
+        private synchronized void offer(String key, long weight, boolean acquired) {
+            Counter counter = counters.get(key);
+            if (counter == null) {
+                if (counters.size() < capacity) {
+                    counter = new Counter(key, 0L);
+                } else {
+                    Counter min = null;
+                    for (Counter candidate : counters.values()) {
+                        if (min == null || candidate.weight < min.weight) {
+                            min = candidate;
+                        }
+                    }
+                    counters.remove(min.key);
+                    counter = new Counter(key, min.weight);
+                }
+                counters.put(key, counter);
+            }
+            counter.weight += weight;
+            counter.samples++;
+            if (!acquired) {
+                counter.failures++;
+            }
+        }
+
+        private synchronized Counter get(String key) {
+            Counter counter = counters.get(key);
+            return counter == null ? null : counter.copy();
+        }
+
+        private synchronized List<Counter> top(int n) {
+            List<Counter> top = new ArrayList<>(counters.size());
+            for (Counter counter : counters.values()) {
+                top.add(counter.copy());
+            }
+            top.sort(Comparator.comparingLong((Counter counter) -> counter.weight).reversed());
+            return top.size() > n ? top.subList(0, Math.max(0, n)) : top;
+        }
+
+        private synchronized void clear() {
+            counters.clear();
+        }
+    }
+
+    private static final class Counter {
+        private final String key;
+        private final long error;
+        private long weight;
+        private long samples;
+        private long failures;
+
+        private Counter(String key, long error) {
+            this.key = key;
+            this.error = error;
+            this.weight = error;
+        }
+
+        private Counter copy() {
+            Counter copy = new Counter(key, error);
+            copy.weight = weight;
+            copy.samples = samples;
+            copy.failures = failures;
+            return copy;
+        }
+    }
+}
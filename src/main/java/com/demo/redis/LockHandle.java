@@ -0,0 +1,67 @@
+package com.demo.redis;
+
+import lombok.Getter;
+import org.redisson.api.RLock;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LockHandle
+ * @description 异步获取到的锁.
+ * 异步加锁的回调不在调用线程执行,因此锁不绑定线程,而是绑定获取时分配的ownerId,释放时必须通过该句柄
+ * @date 2019/9/10 22:14
+ */
+@Getter
+public class LockHandle {
+    /**
+     * 锁的key
+     */
+    private final String lockKey;
+    /**
+     * 锁的持有者标识,代替线程ID
+     */
+    private final long ownerId;
+
+    /**
+     * 获取到锁的时间,用于统计持有时长
+     */
+    private final long acquiredNanos;
+
+    private final RLock lock;
+    private final LockMetrics lockMetrics;
+
+    LockHandle(String lockKey, long ownerId, RLock lock, LockMetrics lockMetrics) {
+        this.lockKey = lockKey;
+        this.ownerId = ownerId;
+        this.lock = lock;
+        this.lockMetrics = lockMetrics;
+        this.acquiredNanos = System.nanoTime();
+    }
+
+    /**
+     * @param []
+     * @return java.util.concurrent.CompletionStage<java.lang.Void>
+     * @author YiHaoXing
+     * @description 非阻塞释放锁
+     * @date 22:20 2019/9/10
+     **/
+    public CompletionStage<Void> unlockAsync() {
+        lockMetrics.recordHold(lockKey, System.nanoTime() - acquiredNanos);
+        return release().whenComplete((v, e) -> {
+            if (e == null) {
+                lockMetrics.recordRelease(lockKey);
+            } else if (e instanceof IllegalMonitorStateException || e.getCause() instanceof IllegalMonitorStateException) {
+                lockMetrics.recordUnlockNotOwner(lockKey);
+            }
+        });
+    }
+
+    /**
+     * 释放Redis中的锁.多节点的锁覆盖此方法
+     */
+    CompletionStage<Void> release() {
+        return lock.unlockAsync(ownerId);
+    }
+}
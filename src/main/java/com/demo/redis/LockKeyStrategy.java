@@ -0,0 +1,114 @@
+package com.demo.redis;
+
+import io.lettuce.core.cluster.SlotHash;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LockKeyStrategy
+ * @description 锁的key在Redis中的实际名称.统一添加前缀,并按配置添加hash tag({...}),
+ * 集群模式下hash tag相同的key在同一个slot,可以在一个LUA脚本中操作.
+ * redis.lock.key.hash-tag: none不添加; key以整个key作为hash tag; 其他值作为固定的hash tag,所有锁在同一个slot
+ * @date 2019/9/26 20:10
+ */
+@Component
+public class LockKeyStrategy {
+
+    private static final String HASH_TAG_NONE = "none";
+    private static final String HASH_TAG_KEY = "key";
+
+    @Autowired
+    private LettuceConnectionFactory lettuceConnectionFactory;
+
+    @Value("${redis.lock.key.prefix:}")
+    private String prefix;
+    @Value("${redis.lock.key.hash-tag:" + HASH_TAG_NONE + "}")
+    private String hashTag;
+
+    /**
+     * 使用固定hash tag时的完整前缀
+     */
+    private String fixedPrefix;
+    private boolean clusterAware;
+
+    @PostConstruct
+    public void init() {
+        if (!HASH_TAG_NONE.equals(hashTag) && !HASH_TAG_KEY.equals(hashTag)) {
+            fixedPrefix = prefix + "{" + hashTag + "}";
+        }
+        clusterAware = lettuceConnectionFactory.isClusterAware();
+    }
+
+    /**
+     * @param [lockKey]
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description 业务key转换为Redis中的key.不判断key是否已经转换过(业务key本身可能以前缀开头),
+     * 每个key只能转换一次:由RedisLockUtils等对外的入口转换,调用方始终传入业务key
+     * @date 20:18 2019/9/26
+     **/
+    public String apply(String lockKey) {
+        if (fixedPrefix != null) {
+            return fixedPrefix + lockKey;
+        }
+        //业务key自带hash tag时保留
+        if (HASH_TAG_NONE.equals(hashTag) || hasHashTag(lockKey)) {
+            return prefix + lockKey;
+        }
+        return prefix + "{" + lockKey + "}";
+    }
+
+    /**
+     * 是否连接的Redis集群
+     */
+    public boolean isClusterAware() {
+        return clusterAware;
+    }
+
+    /**
+     * @param [items, keyOf]
+     * @return java.util.Collection<java.util.List<T>>
+     * @author YiHaoXing
+     * @description 按key所在的slot分组,每组可以在一个LUA脚本中执行.非集群模式下只有一组
+     * @date 20:25 2019/9/26
+     **/
+    public <T> Collection<List<T>> groupBySlot(List<T> items, Function<T, String> keyOf) {
+        if (!clusterAware || items.size() <= 1) {
+            return Collections.singletonList(items);
+        }
+        Map<Integer, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(SlotHash.getSlot(keyOf.apply(item)), slot -> new ArrayList<>()).add(item);
+        }
+        return groups.values();
+    }
+
+    /**
+     * @param [lockKey]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 与Redis计算slot的规则一致:第一个{之后到第一个}之间有至少一个字符
+     * @date 20:28 2019/9/26
+     **/
+    public static boolean hasHashTag(String lockKey) {
+        int start = lockKey.indexOf('{');
+        if (start < 0) {
+            return false;
+        }
+        int end = lockKey.indexOf('}', start + 1);
+        return end > start + 1;
+    }
+}
@@ -0,0 +1,204 @@
+package com.demo.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LockMetrics
+ * @description 分布式锁的Micrometer指标.按锁名的模板打标签(含数字的片段记为*,order:1024记为order:*),
+ * 模板数量超过上限后其余的锁统一记为other,避免动态key导致标签无限增长.
+ * 每次成功获取都有对应的释放记录,redis.lock.held为本节点当前持有的锁数量.通过Actuator的/actuator/metrics/redis.lock.*查看
+ * @date 2019/9/22 15:40
+ */
+@Component
+public class LockMetrics {
+
+    /**
+     * 超出锁名上限后使用的标签值
+     */
+    public static final String OTHER = "other";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 单独打标签的锁名模板数量上限
+     */
+    @Value("${redis.lock.metrics.max-lock-names:100}")
+    private int maxLockNames;
+
+    /**
+     * 当前持有的锁数量
+     */
+    private final AtomicInteger held = new AtomicInteger();
+    /**
+     * 每个锁名模板的指标,大小不超过maxLockNames + 1
+     */
+    private final ConcurrentMap<String, LockMeters> meters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void bindGauge() {
+        Gauge.builder("redis.lock.held", held, AtomicInteger::get)
+                .description("Locks currently held by this node")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param [lockKey, waitNanos, acquired]
+     * @author YiHaoXing
+     * @description 记录一次获取锁.waitNanos为从发起到返回的耗时
+     * @date 15:52 2019/9/22
+     **/
+    public void recordAcquire(String lockKey, long waitNanos, boolean acquired) {
+        LockMeters lockMeters = meters(lockKey);
+        lockMeters.wait.record(waitNanos, TimeUnit.NANOSECONDS);
+        if (acquired) {
+            lockMeters.acquired.increment();
+            held.incrementAndGet();
+        } else {
+            lockMeters.timeout.increment();
+        }
+    }
+
+    /**
+     * 记录一次成功释放锁
+     */
+    public void recordRelease(String lockKey) {
+        held.decrementAndGet();
+    }
+
+    /**
+     * 记录锁的持有时长
+     */
+    public void recordHold(String lockKey, long holdNanos) {
+        meters(lockKey).hold.record(holdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次Redis往返耗时
+     */
+    public void recordRoundTrip(String lockKey, long nanos) {
+        meters(lockKey).roundTrip.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次锁在持有期间过期或被其他客户端持有.持有方之后释放锁时才减少持有数量
+     */
+    public void recordLeaseLost(String lockKey) {
+        meters(lockKey).leaseLost.increment();
+    }
+
+    /**
+     * 记录一次释放不属于自己的锁.调用方认为自己持有该锁,因此同样减少持有数量
+     */
+    public void recordUnlockNotOwner(String lockKey) {
+        meters(lockKey).notOwner.increment();
+        held.decrementAndGet();
+    }
+
+    /**
+     * 记录一次因Redis不可用未能释放的锁.锁留给过期时间清除,调用方不再持有,同样减少持有数量
+     */
+    public void recordUnlockUnavailable(String lockKey) {
+        meters(lockKey).unlockUnavailable.increment();
+        held.decrementAndGet();
+    }
+
+    private LockMeters meters(String lockKey) {
+        String name = template(lockKey);
+        LockMeters lockMeters = meters.get(name);
+        if (lockMeters != null) {
+            return lockMeters;
+        }
+        return meters.computeIfAbsent(meters.size() < maxLockNames ? name : OTHER, LockMeters::new);
+    }
+
+    /**
+     * @param [lockKey]
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description 锁名的模板.以分隔符(: / . - _ { })分开的片段中含有数字的替换为*,
+     * SpEL生成的key(例如'order:' + #orderId)按模板而不是按具体的值打标签.不含数字的锁名原样返回
+     * @date 20:20 2019/10/6
+     **/
+    static String template(String lockKey) {
+        int length = lockKey.length();
+        int first = 0;
+        while (first < length && !isDigit(lockKey.charAt(first))) {
+            first++;
+        }
+        if (first == length) {
+            return lockKey;
+        }
+        StringBuilder template = new StringBuilder(length);
+        int segmentStart = 0;
+        boolean digits = false;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? lockKey.charAt(i) : 0;
+            if (i == length || isSeparator(c)) {
+                if (digits) {
+                    template.append('*');
+                } else {
+                    template.append(lockKey, segmentStart, i);
+                }
+                if (i < length) {
+                    template.append(c);
+                }
+                segmentStart = i + 1;
+                digits = false;
+            } else if (isDigit(c)) {
+                digits = true;
+            }
+        }
+        return template.toString();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ':' || c == '/' || c == '.' || c == '-' || c == '_' || c == '{' || c == '}';
+    }
+
+    /**
+     * 一个锁名对应的全部指标,创建后缓存,记录时不再查找注册表
+     */
+    private final class LockMeters {
+        private final Timer wait;
+        private final Timer hold;
+        private final Timer roundTrip;
+        private final Counter acquired;
+        private final Counter timeout;
+        private final Counter leaseLost;
+        private final Counter notOwner;
+        private final Counter unlockUnavailable;
+
+        private LockMeters(String name) {
+            this.wait = Timer.builder("redis.lock.wait").tag("lock", name)
+                    .description("Time spent acquiring the lock").register(meterRegistry);
+            this.hold = Timer.builder("redis.lock.hold").tag("lock", name)
+                    .description("Time the lock was held").register(meterRegistry);
+            this.roundTrip = Timer.builder("redis.lock.rtt").tag("lock", name)
+                    .description("Redis round trip of lock scripts").register(meterRegistry);
+            this.acquired = Counter.builder("redis.lock.acquire").tag("lock", name).tag("result", "success").register(meterRegistry);
+            this.timeout = Counter.builder("redis.lock.acquire").tag("lock", name).tag("result", "timeout").register(meterRegistry);
+            this.leaseLost = Counter.builder("redis.lock.lease.lost").tag("lock", name).register(meterRegistry);
+            this.notOwner = Counter.builder("redis.lock.unlock.not_owner").tag("lock", name).register(meterRegistry);
+            this.unlockUnavailable = Counter.builder("redis.lock.unlock.unavailable").tag("lock", name).register(meterRegistry);
+        }
+    }
+}
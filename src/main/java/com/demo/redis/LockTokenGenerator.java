@@ -0,0 +1,98 @@
+package com.demo.redis;
+
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LockTokenGenerator
+ * @description 锁的value(token)生成器.token为 节点ID-线程序号-计数器,均为十六进制:
+ * 节点ID在进程启动时随机生成,重启后不会与上一个进程残留的锁重复;线程序号在线程第一次使用时分配,不复用线程ID(线程ID会被复用);
+ * 计数器每个线程独立递增.生成时不加锁、不取随机数,前缀写在线程自己的缓冲区中,每次只改写计数器部分,只分配结果字符串
+ * @date 2019/10/1 20:10
+ */
+@Component
+public class LockTokenGenerator {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * 节点ID的位数,48位随机数
+     */
+    private static final int NODE_ID_BITS = 48;
+    private static final char SEPARATOR = '-';
+
+    private final String nodeId;
+    private final AtomicLong threadSequence = new AtomicLong();
+    private final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(this::newBuffer);
+
+    public LockTokenGenerator() {
+        //只在启动时取一次随机数.各节点同时启动时基于时间的种子可能相近,使用SecureRandom
+        long random = new SecureRandom().nextLong() & ((1L << NODE_ID_BITS) - 1);
+        char[] chars = new char[NODE_ID_BITS / 4];
+        writeHex(chars, 0, random, chars.length);
+        this.nodeId = new String(chars);
+    }
+
+    /**
+     * 本节点(进程)的ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @param []
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description 生成一个在所有节点中唯一的token
+     * @date 20:20 2019/10/1
+     **/
+    public String next() {
+        Buffer buffer = buffers.get();
+        long counter = ++buffer.counter;
+        int digits = hexDigits(counter);
+        writeHex(buffer.chars, buffer.prefixLength, counter, digits);
+        return new String(buffer.chars, 0, buffer.prefixLength + digits);
+    }
+
+    private Buffer newBuffer() {
+        long sequence = threadSequence.incrementAndGet();
+        int sequenceDigits = hexDigits(sequence);
+        int prefixLength = nodeId.length() + 1 + sequenceDigits + 1;
+        //计数器最多16位十六进制
+        char[] chars = new char[prefixLength + 16];
+        nodeId.getChars(0, nodeId.length(), chars, 0);
+        chars[nodeId.length()] = SEPARATOR;
+        writeHex(chars, nodeId.length() + 1, sequence, sequenceDigits);
+        chars[prefixLength - 1] = SEPARATOR;
+        return new Buffer(chars, prefixLength);
+    }
+
+    private static int hexDigits(long value) {
+        return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(value) + 3) / 4);
+    }
+
+    private static void writeHex(char[] chars, int offset, long value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * 线程自己的token缓冲区,前缀只写一次
+     */
+    private static final class Buffer {
+        private final char[] chars;
+        private final int prefixLength;
+        private long counter;
+
+        private Buffer(char[] chars, int prefixLength) {
+            this.chars = chars;
+            this.prefixLength = prefixLength;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.demo.redis;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.LuaScriptRegistry
+ * @description LUA脚本注册中心.脚本只在注册时创建一次并计算SHA1,执行时使用EVALSHA,
+ * 服务端返回NOSCRIPT(例如主从切换后脚本缓存丢失)时重新SCRIPT LOAD后再执行
+ * @date 2019/9/8 15:20
+ */
+@Component
+@Slf4j
+public class LuaScriptRegistry {
+
+    @Autowired
+    private StringRedisTemplate lockRedisTemplate;
+    @Autowired
+    private LockMetrics lockMetrics;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    /**
+     * value锁使用内存时不预加载,容器启动不访问Redis.其余脚本首次执行时收到NOSCRIPT再加载
+     */
+    @Value("${redis.lock.backend:redis}")
+    private String backend;
+
+    /**
+     * 已注册的脚本.key为脚本内容
+     */
+    private final ConcurrentMap<String, RedisScript<?>> scripts = new ConcurrentHashMap<>();
+    /**
+     * EVALSHA直接命中次数
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * 因NOSCRIPT重新加载脚本的次数
+     */
+    private final LongAdder reloads = new LongAdder();
+
+    @PostConstruct
+    public void bindCounters() {
+        FunctionCounter.builder("redis.lock.script", hits, LongAdder::sum).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("redis.lock.script", reloads, LongAdder::sum).tag("result", "reload").register(meterRegistry);
+    }
+
+    /**
+     * @param [scriptText, resultType]
+     * @return org.springframework.data.redis.core.script.RedisScript<T>
+     * @author YiHaoXing
+     * @description 注册脚本并尝试预加载到Redis(redis.lock.backend=memory时不预加载).同一脚本重复注册返回同一个实例
+     * @date 15:26 2019/9/8
+     **/
+    @SuppressWarnings("unchecked")
+    public <T> RedisScript<T> register(String scriptText, Class<T> resultType) {
+        return (RedisScript<T>) scripts.computeIfAbsent(scriptText, text -> {
+            RedisScript<T> script = new DefaultRedisScript<>(text, resultType);
+            preload(script);
+            return script;
+        });
+    }
+
+    /**
+     * @param [script, keys, args]
+     * @return T
+     * @author YiHaoXing
+     * @description 使用EVALSHA执行脚本.参数与RedisTemplate.execute(RedisScript, List, Object...)一致
+     * @date 15:31 2019/9/8
+     **/
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        ReturnType returnType = ReturnType.fromJavaType(script.getResultType());
+        byte[][] keysAndArgs = keysAndArgs(keys, args);
+        int numKeys = keys.size();
+        long start = System.nanoTime();
+        T result = (T) lockRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            try {
+                Object value = connection.evalSha(script.getSha1(), returnType, numKeys, keysAndArgs);
+                hits.increment();
+                return value;
+            } catch (RuntimeException e) {
+                if (!isNoScriptError(e)) {
+                    throw e;
+                }
+                //脚本缓存丢失,重新加载后再执行一次
+                reloads.increment();
+                log.warn("Lua script {} not found on server, reloading", script.getSha1());
+                load(connection, script);
+                return connection.evalSha(script.getSha1(), returnType, numKeys, keysAndArgs);
+            }
+        });
+        if (numKeys > 0) {
+            lockMetrics.recordRoundTrip(keys.get(0), System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /**
+     * EVALSHA直接命中次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 因NOSCRIPT重新加载脚本的次数
+     */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    private void preload(RedisScript<?> script) {
+        if ("memory".equals(backend)) {
+            return;
+        }
+        try {
+            lockRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                load(connection, script);
+                return null;
+            });
+        } catch (Exception e) {
+            //启动时Redis不可用不影响注册,首次执行时会收到NOSCRIPT并重新加载
+            log.warn("Preload lua script {} failed: {}", script.getSha1(), e.getMessage());
+        }
+    }
+
+    private void load(RedisConnection connection, RedisScript<?> script) {
+        connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * key和参数都按UTF-8字符串编码,数字参数先转为字符串,与LUA中tonumber和redis命令的解析一致
+     */
+    private static byte[][] keysAndArgs(List<String> keys, Object[] args) {
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        int i = 0;
+        for (String key : keys) {
+            keysAndArgs[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        for (Object arg : args) {
+            keysAndArgs[i++] = arg instanceof byte[] ? (byte[]) arg : String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+        }
+        return keysAndArgs;
+    }
+
+    private static boolean isNoScriptError(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,187 @@
+package com.demo.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.Redisson;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.QuorumLockClient
+ * @description RedLock.每个独立的master一个Redisson客户端,加锁请求同时发给所有节点,
+ * 多数节点在有效期内加锁成功即获取成功,耗时约为多数节点中最慢的一次往返.
+ * 配置redis.lock.redlock.addresses后才会创建
+ * @date 2019/9/27 20:10
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "redis.lock.redlock", name = "addresses")
+public class QuorumLockClient {
+
+    /**
+     * 各节点的地址,例如redis://10.0.0.1:6379,redis://10.0.0.2:6379,redis://10.0.0.3:6379
+     */
+    @Value("${redis.lock.redlock.addresses}")
+    private String[] addresses;
+    /**
+     * 每个节点客户端的配置模板
+     */
+    @Value("${redis.lock.redlock.config:classpath:redisson-redlock.yml}")
+    private Resource config;
+
+    private final List<RedissonClient> clients = new ArrayList<>();
+    /**
+     * 只负责在退避后发起下一轮加锁,不执行阻塞操作
+     */
+    private ScheduledExecutorService retryScheduler;
+
+    @PostConstruct
+    public void start() throws IOException {
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-lock-quorum-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (String address : addresses) {
+            Config nodeConfig;
+            try (InputStream in = config.getInputStream()) {
+                nodeConfig = Config.fromYAML(in);
+            }
+            nodeConfig.useSingleServer().setAddress(address.trim());
+            clients.add(Redisson.create(nodeConfig));
+        }
+        log.info("RedLock nodes: {}, quorum: {}", clients.size(), quorum());
+    }
+
+    @PreDestroy
+    public void stop() {
+        retryScheduler.shutdownNow();
+        clients.forEach(RedissonClient::shutdown);
+    }
+
+    /**
+     * 加锁成功需要的节点数
+     */
+    public int quorum() {
+        return clients.size() / 2 + 1;
+    }
+
+    /**
+     * @param [lockKey, ownerId, waitTime, leaseTime, timeUnit, lockMetrics]
+     * @return java.util.concurrent.CompletionStage<com.demo.redis.LockHandle>
+     * @author YiHaoXing
+     * @description 在所有节点上并行加锁.多数节点成功且扣除耗时和时钟漂移后锁仍有效则获取成功.
+     * 否则释放本轮已加上的锁,随机退避后重试,直到waitTime用完以TimeoutException异常完成.
+     * 每个节点只尝试一次不等待,避免多个客户端各占一部分节点互相等待
+     * @date 20:25 2019/9/27
+     **/
+    CompletionStage<LockHandle> tryLockAsync(String lockKey, long ownerId, long waitTime, long leaseTime, TimeUnit timeUnit,
+                                             LockMetrics lockMetrics) {
+        CompletableFuture<LockHandle> result = new CompletableFuture<>();
+        long deadline = System.nanoTime() + timeUnit.toNanos(waitTime);
+        attempt(lockKey, ownerId, leaseTime, timeUnit, deadline, 0, lockMetrics, result);
+        return result;
+    }
+
+    private void attempt(String lockKey, long ownerId, long leaseTime, TimeUnit timeUnit, long deadline, int round,
+                         LockMetrics lockMetrics, CompletableFuture<LockHandle> result) {
+        long start = System.nanoTime();
+        long leaseNanos = timeUnit.toNanos(leaseTime);
+        //时钟漂移:过期时间的1%再加2毫秒
+        long driftNanos = leaseNanos / 100 + TimeUnit.MILLISECONDS.toNanos(2);
+        int quorum = quorum();
+        int maxFailures = clients.size() - quorum;
+
+        List<RLock> locks = new ArrayList<>(clients.size());
+        List<CompletionStage<Boolean>> attempts = new ArrayList<>(clients.size());
+        for (RedissonClient client : clients) {
+            RLock lock = client.getLock(lockKey);
+            locks.add(lock);
+            attempts.add(lock.tryLockAsync(0L, leaseTime, timeUnit, ownerId));
+        }
+
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        for (CompletionStage<Boolean> attempt : attempts) {
+            attempt.whenComplete((locked, e) -> {
+                if (e == null && locked) {
+                    if (acquired.incrementAndGet() != quorum) {
+                        return;
+                    }
+                    if (System.nanoTime() - start < leaseNanos - driftNanos) {
+                        result.complete(new QuorumLockHandle(lockKey, ownerId, locks, attempts, lockMetrics));
+                        return;
+                    }
+                } else if (failed.incrementAndGet() != maxFailures + 1) {
+                    return;
+                }
+                //本轮失败:释放后重试
+                releaseAll(locks, attempts, ownerId).whenComplete((v, releaseError) -> {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        result.completeExceptionally(new TimeoutException("Lock " + lockKey + " not acquired on "
+                                + quorum + " of " + clients.size() + " nodes"));
+                        return;
+                    }
+                    retryScheduler.schedule(() -> attempt(lockKey, ownerId, leaseTime, timeUnit, deadline, round + 1, lockMetrics, result),
+                            Math.min(remaining, RedisLockUtils.backoffNanos(round)), TimeUnit.NANOSECONDS);
+                });
+            });
+        }
+    }
+
+    /**
+     * 多个节点上的锁
+     */
+    private static final class QuorumLockHandle extends LockHandle {
+        private final List<RLock> locks;
+        private final List<CompletionStage<Boolean>> attempts;
+
+        private QuorumLockHandle(String lockKey, long ownerId, List<RLock> locks, List<CompletionStage<Boolean>> attempts,
+                                 LockMetrics lockMetrics) {
+            super(lockKey, ownerId, locks.get(0), lockMetrics);
+            this.locks = locks;
+            this.attempts = attempts;
+        }
+
+        @Override
+        CompletionStage<Void> release() {
+            return releaseAll(locks, attempts, getOwnerId());
+        }
+    }
+
+    /**
+     * 等待每个节点的加锁结果,只释放加上了的,避免释放之后才加上的锁残留到过期
+     */
+    private static CompletableFuture<Void> releaseAll(List<RLock> locks, List<CompletionStage<Boolean>> attempts, long ownerId) {
+        CompletableFuture<?>[] unlocks = new CompletableFuture<?>[locks.size()];
+        for (int i = 0; i < locks.size(); i++) {
+            RLock lock = locks.get(i);
+            unlocks[i] = attempts.get(i)
+                    .handle((locked, e) -> e == null && locked)
+                    .thenCompose(locked -> locked ? lock.unlockAsync(ownerId) : CompletableFuture.<Void>completedFuture(null))
+                    .toCompletableFuture();
+        }
+        return CompletableFuture.allOf(unlocks);
+    }
+}
@@ -0,0 +1,290 @@
+package com.demo.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.RedisLoadingException;
+import org.redisson.client.RedisNodeNotFoundException;
+import org.redisson.client.RedisTimeoutException;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.RedisCircuitBreaker
+ * @description RedisLockUtils访问Redis的熔断器.连续failureThreshold次连接失败或超时后打开,
+ * 打开期间的调用立即抛出RedisUnavailableException,不再每次等待Redisson的timeout和重试.
+ * 打开后由后台线程每隔probeIntervalMillis探测一次Redis,探测成功后关闭,业务线程不参与探测.
+ * 其他异常(锁不属于当前线程、脚本错误等)说明Redis可以访问,与成功一样清零失败次数
+ * @date 2019/10/5 20:15
+ */
+@Component
+@Slf4j
+public class RedisCircuitBreaker {
+
+    /**
+     * 熔断打开时的降级策略
+     */
+    public enum Policy {
+        /**
+         * 立即失败
+         */
+        FAIL_FAST,
+        /**
+         * 标记了degradable的锁改用JVM本地锁,只保证本节点内互斥;其他锁立即失败
+         */
+        LOCAL
+    }
+
+    /**
+     * 探测使用的key,只执行EXISTS
+     */
+    private static final String PROBE_KEY = "redis-lock:probe";
+
+    @Lazy
+    @Autowired
+    private RedissonClient redissonClient;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${redis.lock.breaker.enabled:true}")
+    private boolean enabled;
+    /**
+     * 连续失败多少次后打开
+     */
+    @Value("${redis.lock.breaker.failure-threshold:3}")
+    private int failureThreshold;
+    /**
+     * 打开期间探测Redis的间隔和每次探测的超时.以毫秒为单位
+     */
+    @Value("${redis.lock.breaker.probe-interval-millis:1000}")
+    private long probeIntervalMillis;
+    @Value("${redis.lock.breaker.probe-timeout-millis:500}")
+    private long probeTimeoutMillis;
+    @Value("${redis.lock.breaker.policy:fail-fast}")
+    private String policyName;
+
+    private Policy policy;
+    private volatile boolean open;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private ScheduledExecutorService prober;
+    private Counter rejected;
+    private Counter degraded;
+
+    @PostConstruct
+    public void init() {
+        policy = Policy.valueOf(policyName.trim().toUpperCase().replace('-', '_'));
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-lock-breaker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("redis.lock.breaker.open", this, breaker -> breaker.open ? 1.0D : 0.0D)
+                .description("1 while calls to Redis are short-circuited")
+                .register(meterRegistry);
+        rejected = Counter.builder("redis.lock.breaker.rejected")
+                .description("Calls failed fast while the breaker was open")
+                .register(meterRegistry);
+        degraded = Counter.builder("redis.lock.degraded")
+                .description("Locks taken as JVM-local locks while Redis was unavailable")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        prober.shutdownNow();
+    }
+
+    /**
+     * 函数可以抛出InterruptedException的调用,用于会等待的加锁方法
+     */
+    @FunctionalInterface
+    public interface InterruptibleCall<T> {
+        T call() throws InterruptedException;
+    }
+
+    /**
+     * @param [call]
+     * @return T
+     * @author YiHaoXing
+     * @description 执行一次Redis调用并记录结果.打开时不执行,直接抛出RedisUnavailableException
+     * @date 20:30 2019/10/5
+     **/
+    public <T> T call(Supplier<T> call) {
+        checkClosed();
+        try {
+            T result = call.get();
+            onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            onError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @param [call]
+     * @return T
+     * @author YiHaoXing
+     * @description 与call相同,用于会等待的加锁方法
+     * @date 20:32 2019/10/5
+     **/
+    public <T> T callInterruptibly(InterruptibleCall<T> call) throws InterruptedException {
+        checkClosed();
+        try {
+            T result = call.call();
+            onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            onError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @param [call]
+     * @return java.util.concurrent.CompletionStage<T>
+     * @author YiHaoXing
+     * @description 异步调用.打开时返回以RedisUnavailableException完成的结果,否则在调用完成时记录结果
+     * @date 20:35 2019/10/5
+     **/
+    public <T> CompletionStage<T> callAsync(Supplier<? extends CompletionStage<T>> call) {
+        CompletionStage<T> stage;
+        try {
+            checkClosed();
+            stage = call.get();
+        } catch (RuntimeException e) {
+            onError(e);
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return stage.whenComplete((result, e) -> {
+            if (e == null) {
+                onSuccess();
+            } else {
+                onError(e);
+            }
+        });
+    }
+
+    /**
+     * @param [e]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 调用失败的原因是Redis不可用,并且降级策略为LOCAL
+     * @date 20:40 2019/10/5
+     **/
+    public boolean canDegrade(Throwable e) {
+        return policy == Policy.LOCAL && isUnavailable(e);
+    }
+
+    /**
+     * 记录一次降级为本地锁
+     */
+    public void recordDegraded() {
+        degraded.increment();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param [e]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 异常链中是否有连接失败或超时.Redisson和Lettuce(经过Spring转换)的异常都在这里判断
+     * @date 20:45 2019/10/5
+     **/
+    public static boolean isUnavailable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof RedisUnavailableException
+                    || cause instanceof RedisTimeoutException
+                    || cause instanceof RedisConnectionException
+                    || cause instanceof RedisNodeNotFoundException
+                    || cause instanceof RedisLoadingException
+                    || cause instanceof RedisConnectionFailureException
+                    || cause instanceof QueryTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkClosed() {
+        if (open) {
+            rejected.increment();
+            throw new RedisUnavailableException("Redis is unavailable, circuit breaker is open");
+        }
+    }
+
+    private void onSuccess() {
+        //正常情况下只有读,不写共享变量
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    private void onError(Throwable e) {
+        if (!isUnavailable(e)) {
+            onSuccess();
+            return;
+        }
+        if (e instanceof RedisUnavailableException || !enabled) {
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            trip(e);
+        }
+    }
+
+    private synchronized void trip(Throwable e) {
+        if (open) {
+            return;
+        }
+        open = true;
+        log.warn("Redis unavailable after {} consecutive failures, circuit breaker open: {}", consecutiveFailures.get(), e.getMessage());
+        prober.schedule(this::probe, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 探测成功关闭熔断,失败则等待下一次探测.Redisson内部的重试在超时后继续进行,不影响下一次探测
+     */
+    private void probe() {
+        try {
+            redissonClient.getBucket(PROBE_KEY, StringCodec.INSTANCE).isExistsAsync().get(probeTimeoutMillis, TimeUnit.MILLISECONDS);
+            consecutiveFailures.set(0);
+            open = false;
+            log.info("Redis is reachable again, circuit breaker closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("Redis probe failed: {}", e.toString());
+            prober.schedule(this::probe, probeIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.demo.redis;
+
+import org.redisson.api.RList;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.RedisCondition
+ * @description DistributedLock的条件.等待者把自己的ID加入Redis列表后释放锁,signal从列表头取出一个ID并发布到条件频道,
+ * 发布只用于唤醒,是否被signal以ID是否还在列表中为准,错过消息不会丢失signal.
+ * 等待者宕机后ID会残留在列表中并可能消耗一次signal,对此敏感时使用signalAll
+ * @date 2019/9/28 20:40
+ */
+class RedisCondition implements Condition {
+
+    /**
+     * 条件频道的前缀,后接等待队列的key
+     */
+    static final String CONDITION_CHANNEL_PREFIX = "redis-lock:condition:";
+
+    /**
+     * 唤醒一个等待者的LUA脚本：取出队首的ID并发布.有等待者返回1,否则返回0
+     */
+    static final String SIGNAL_SCRIPT_LUA = "local id = redis.call('lpop', KEYS[1]) " +
+            "if id then redis.call('publish', '" + CONDITION_CHANNEL_PREFIX + "' .. KEYS[1], id) return 1 end " +
+            "return 0";
+
+    /**
+     * 唤醒所有等待者的LUA脚本：清空队列并广播.有等待者返回1,否则返回0
+     */
+    static final String SIGNAL_ALL_SCRIPT_LUA = "if redis.call('del', KEYS[1]) == 1 then " +
+            "redis.call('publish', '" + CONDITION_CHANNEL_PREFIX + "' .. KEYS[1], '" + LockChannelSubscriber.BROADCAST + "') return 1 end " +
+            "return 0";
+
+    private final DistributedLock lock;
+    private final String queueKey;
+    private final RList<String> queue;
+
+    RedisCondition(DistributedLock lock, String name) {
+        this.lock = lock;
+        this.queueKey = lock.getLockKey() + ":condition:" + name;
+        this.queue = lock.redissonClient().getList(queueKey, StringCodec.INSTANCE);
+    }
+
+    @Override
+    public void await() throws InterruptedException {
+        while (awaitNanos(TimeUnit.DAYS.toNanos(1)) <= 0) {
+            //没有超时限制,继续等待
+        }
+    }
+
+    @Override
+    public void awaitUninterruptibly() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean await(long time, TimeUnit unit) throws InterruptedException {
+        return awaitNanos(unit.toNanos(time)) > 0;
+    }
+
+    @Override
+    public boolean awaitUntil(Date deadline) throws InterruptedException {
+        return await(deadline.getTime() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param [nanosTimeout]
+     * @return long
+     * @author YiHaoXing
+     * @description 加入等待队列,完全释放锁(包括重入的次数)后等待signal,返回前重新获取相同次数的锁.
+     * 返回剩余的等待时间,小于等于0表示超时
+     * @date 20:50 2019/9/28
+     **/
+    @Override
+    public long awaitNanos(long nanosTimeout) throws InterruptedException {
+        if (!lock.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("Lock " + lock.getLockKey() + " is not held by current thread");
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        long deadline = System.nanoTime() + nanosTimeout;
+        String waiterId = lock.tokenGenerator().next();
+        //先订阅再入队,之后的signal消息不会错过
+        try (LockChannelSubscriber.Waiter waiter = lock.channelSubscriber().join(CONDITION_CHANNEL_PREFIX + queueKey, waiterId)) {
+            if (!waiter.isSubscribed()) {
+                throw new IllegalStateException("Subscribe condition channel of " + queueKey + " failed");
+            }
+            queue.add(waiterId);
+            int holds = lock.getLock().getHoldCount();
+            for (int i = 0; i < holds; i++) {
+                lock.unlock();
+            }
+            boolean signalled = false;
+            InterruptedException interrupted = null;
+            try {
+                signalled = waiter.awaitPayload(nanosTimeout, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                interrupted = e;
+            } finally {
+                //ID已不在队列中说明已被signal,即使没有收到消息
+                if (!signalled) {
+                    signalled = !queue.remove(waiterId);
+                }
+                for (int i = 0; i < holds; i++) {
+                    lock.lock();
+                }
+            }
+            if (interrupted != null) {
+                if (!signalled) {
+                    throw interrupted;
+                }
+                //已被signal时正常返回,保留中断状态
+                Thread.currentThread().interrupt();
+            }
+            long remaining = deadline - System.nanoTime();
+            return signalled ? Math.max(1L, remaining) : Math.min(0L, remaining);
+        }
+    }
+
+    @Override
+    public void signal() {
+        checkHeld();
+        execute(lock.factory().signalScript);
+    }
+
+    @Override
+    public void signalAll() {
+        checkHeld();
+        execute(lock.factory().signalAllScript);
+    }
+
+    /**
+     * 通过EVALSHA执行,Redis不可用时由熔断器快速失败
+     */
+    private void execute(RedisScript<Long> script) {
+        DistributedLockFactory factory = lock.factory();
+        factory.circuitBreaker.call(() -> factory.scriptRegistry.execute(script, Collections.singletonList(queueKey)));
+    }
+
+    private void checkHeld() {
+        if (!lock.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("Lock " + lock.getLockKey() + " is not held by current thread");
+        }
+    }
+}
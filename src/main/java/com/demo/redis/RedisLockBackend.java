@@ -0,0 +1,106 @@
+package com.demo.redis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.RedisLockBackend
+ * @description 锁存储在Redis中.加锁为SET NX PX,其他操作为RedisLockUtils和LeaseRenewalScheduler中定义的LUA脚本,
+ * 释放通知通过锁的释放频道,由LockChannelSubscriber订阅
+ * @date 2019/10/6 20:35
+ */
+@Component
+@ConditionalOnProperty(prefix = "redis.lock", name = "backend", havingValue = "redis", matchIfMissing = true)
+public class RedisLockBackend implements LockBackend {
+
+    @Autowired
+    private StringRedisTemplate lockRedisTemplate;
+    @Autowired
+    private LuaScriptRegistry scriptRegistry;
+    @Autowired
+    private LockChannelSubscriber channelSubscriber;
+
+    private RedisScript<Long> unlockScript;
+    private RedisScript<Long> tryLockScript;
+    private RedisScript<Long> fencedLockScript;
+    private RedisScript<List> renewScript;
+    private RedisScript<Long> batchLockScript;
+    private RedisScript<List> batchUnlockScript;
+
+    @PostConstruct
+    public void registerScripts() {
+        unlockScript = scriptRegistry.register(RedisLockUtils.UNLOCK_PUBLISH_SCRIPT_LUA, Long.class);
+        tryLockScript = scriptRegistry.register(RedisLockUtils.TRY_LOCK_SCRIPT_LUA, Long.class);
+        fencedLockScript = scriptRegistry.register(RedisLockUtils.FENCED_LOCK_SCRIPT_LUA, Long.class);
+        renewScript = scriptRegistry.register(LeaseRenewalScheduler.RENEW_SCRIPT_LUA, List.class);
+        batchLockScript = scriptRegistry.register(RedisLockUtils.BATCH_LOCK_SCRIPT_LUA, Long.class);
+        batchUnlockScript = scriptRegistry.register(RedisLockUtils.BATCH_UNLOCK_SCRIPT_LUA, List.class);
+    }
+
+    @Override
+    public boolean tryLock(String key, String value, long expireMillis) {
+        return Boolean.TRUE.equals(lockRedisTemplate.opsForValue().setIfAbsent(key, value, expireMillis, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public Long tryLockOrTtl(String key, String value, long expireMillis) {
+        return scriptRegistry.execute(tryLockScript, Collections.singletonList(key), value, expireMillis);
+    }
+
+    @Override
+    public long tryLockWithFence(String key, String value, long expireMillis) {
+        return scriptRegistry.execute(fencedLockScript, Arrays.asList(key, RedisLockUtils.fenceKey(key)), value, expireMillis);
+    }
+
+    @Override
+    public boolean unlock(String key, String value) {
+        return Long.valueOf(1L).equals(scriptRegistry.execute(unlockScript, Collections.singletonList(key), value));
+    }
+
+    @Override
+    public boolean tryLockAll(List<String> keys, String value, long expireMillis) {
+        return Long.valueOf(1L).equals(scriptRegistry.execute(batchLockScript, keys, value, expireMillis));
+    }
+
+    @Override
+    public boolean[] unlockAll(List<String> keys, String value) {
+        List<?> result = scriptRegistry.execute(batchUnlockScript, keys, value);
+        boolean[] released = new boolean[keys.size()];
+        for (int i = 0; result != null && i < released.length; i++) {
+            released[i] = Long.valueOf(1L).equals(result.get(i));
+        }
+        return released;
+    }
+
+    @Override
+    public boolean[] renew(List<String> keys, List<String> values, long[] expireMillis) {
+        List<Object> args = new ArrayList<>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            args.add(values.get(i));
+            args.add(expireMillis[i]);
+        }
+        List<?> result = scriptRegistry.execute(renewScript, keys, args.toArray());
+        boolean[] renewed = new boolean[keys.size()];
+        for (int i = 0; i < renewed.length; i++) {
+            renewed[i] = Long.valueOf(1L).equals(result.get(i));
+        }
+        return renewed;
+    }
+
+    @Override
+    public ReleaseWaiter subscribe(String key) {
+        return channelSubscriber.join(RedisLockUtils.RELEASE_CHANNEL_PREFIX + key);
+    }
+}
@@ -3,22 +3,41 @@ package com.demo.redis;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RFuture;
 import org.redisson.api.RLock;
+import org.redisson.api.RPermitExpirableSemaphore;
 import org.redisson.api.RReadWriteLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
-import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * @param
  * @author YiHaoXing
- * @description 通过redis实现分布式锁工具类
+ * @description 通过redis实现分布式锁工具类.value锁(SET NX PX和比较删除)经过LockBackend,可以换为JVM内的实现
  * @date 18:02 2019/6/30
  * @return
  **/
@@ -27,15 +46,22 @@ import java.util.concurrent.TimeUnit;
 public class RedisLockUtils {
 
     @Autowired
-    private RedisTemplate<String, String> redisTemplate;
-    /**
-     * 成功获取锁返回值
-     */
-    private static final Long LOCK_SUCCESS = 1L;
+    private LeaseRenewalScheduler leaseRenewalScheduler;
+    @Autowired
+    private LockMetrics lockMetrics;
+    @Autowired
+    private LockContentionProfiler contentionProfiler;
+    @Autowired
+    private LockKeyStrategy keyStrategy;
+    @Autowired
+    private LockTokenGenerator tokenGenerator;
+    @Autowired
+    private RedisCircuitBreaker circuitBreaker;
     /**
-     * 成功释放锁返回值
+     * value锁的存储,见redis.lock.backend
      */
-    private static final Long UNLOCK_SUCCESS = 1L;
+    @Autowired
+    private LockBackend lockBackend;
 
     /**
      * @param [lockKey, value, expireTime]
@@ -45,22 +71,31 @@ public class RedisLockUtils {
      * @date 0:45 2019/6/29
      **/
     public boolean getLock(String lockKey, String value, int expireTime) {
-        return redisTemplate.opsForValue().setIfAbsent(lockKey, value, expireTime, TimeUnit.SECONDS);
+        return tryLock(keyStrategy.apply(lockKey), value, toMillis(expireTime, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @param [lockKey, value, expireTime, timeUnit]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 获取锁, 原子操作。使用SET NX PX, 过期时间精确到毫秒。经过LockBackend
+     * @date 22:05 2019/9/16
+     **/
+    public boolean getLock(String lockKey, String value, long expireTime, TimeUnit timeUnit) {
+        return tryLock(keyStrategy.apply(lockKey), value, toMillis(expireTime, timeUnit));
     }
 
     /**
      * @param [lockKey, value]
      * @return boolean
      * @author YiHaoXing
-     * @description 释放锁.非原子操作, 不推荐使用该方式释放锁
+     * @description 释放锁.已改为与releaseLockByLua相同的原子比较删除,经过LockBackend
      * @date 0:44 2019/6/29
+     * @deprecated 使用releaseLockByLua
      **/
+    @Deprecated
     public boolean releaseLock(String lockKey, String value) {
-        if (value.equals(redisTemplate.opsForValue().get(lockKey))) {
-            return redisTemplate.delete(lockKey);
-        } else {
-            return false;
-        }
+        return releaseLockByLua(lockKey, value);
     }
 
 
@@ -69,39 +104,503 @@ public class RedisLockUtils {
      */
     public static final String UNLOCK_SCRIPT_LUA = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
 
+    /**
+     * 锁释放通知频道的前缀.频道名为前缀加锁的key
+     */
+    public static final String RELEASE_CHANNEL_PREFIX = "redis-lock:release:";
+
+    /**
+     * 释放锁并通知等待者的LUA脚本：与UNLOCK_SCRIPT_LUA相同的比较删除,删除成功后在该key的频道上发布消息
+     */
+    public static final String UNLOCK_PUBLISH_SCRIPT_LUA = "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "redis.call('del', KEYS[1]) " +
+            "redis.call('publish', '" + RELEASE_CHANNEL_PREFIX + "' .. KEYS[1], 1) " +
+            "return 1 else return 0 end";
+
     /**
      * @param [lockKey, value]
      * @return boolean
      * @author YiHaoXing
-     * @description 使用LUA脚本释放锁, 原子操作
+     * @description 使用LUA脚本释放锁, 原子操作。释放成功后通知等待该锁的tryLockByLua
      * @date 0:47 2019/6/29
      **/
     public boolean releaseLockByLua(String lockKey, String value) {
-        RedisScript<Long> redisScript = new DefaultRedisScript<>(UNLOCK_SCRIPT_LUA, Long.class);
-        return UNLOCK_SUCCESS.equals(redisTemplate.execute(redisScript, Collections.singletonList(lockKey), value));
+        String key = keyStrategy.apply(lockKey);
+        //释放时停止自动续期
+        leaseRenewalScheduler.cancel(key, value);
+        boolean released;
+        try {
+            released = circuitBreaker.call(() -> lockBackend.unlock(key, value));
+        } catch (RuntimeException e) {
+            recordUnlockFailure(key, e);
+            throw e;
+        }
+        recordRelease(key, released);
+        return released;
     }
 
-    /**
-     * 获取锁的LUA脚本：用setNx命令设置值,并设置过期时间
-     */
-    public static final String LOCK_SCRIPT_LUA = "if redis.call('setNx',KEYS[1],ARGV[1]) == 1 then return redis.call('expire',KEYS[1],ARGV[2]) else return 0 end";
-
     /**
      * @param [lockKey, value, expireTime]
      * @return boolean
      * @author YiHaoXing
-     * @description 使用LUA脚本获取锁, 原子操作。过期时间单位为秒
+     * @description 获取锁, 原子操作。过期时间单位为秒.经过LockBackend, Redis中为SET NX PX, 与getLock相同
      * @date 0:46 2019/6/29
      **/
     public boolean getLockByLua(String lockKey, String value, int expireTime) {
-        RedisScript<Long> redisScript = new DefaultRedisScript<>(LOCK_SCRIPT_LUA, Long.class);
-        return LOCK_SUCCESS.equals(redisTemplate.execute(redisScript, Collections.singletonList(lockKey), value, expireTime));
+        return tryLock(keyStrategy.apply(lockKey), value, toMillis(expireTime, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @param [lockKey, value, expireTime]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 使用LUA脚本获取锁并自动续期。持有期间每过三分之一过期时间续期一次, 调用releaseLockByLua后停止续期。过期时间单位为秒
+     * @date 20:52 2019/9/15
+     **/
+    public boolean getRenewableLockByLua(String lockKey, String value, int expireTime) {
+        return getRenewableLockByLua(lockKey, value, expireTime, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param [lockKey, value, expireTime, timeUnit]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 使用LUA脚本获取锁并自动续期。过期时间精确到毫秒.
+     * 续期由定时触发检查, 过期时间小于3个触发间隔(redis.lock.renewal.tick-millis)时按3个触发间隔加锁, 否则锁可能在第一次续期前过期
+     * @date 22:12 2019/9/16
+     **/
+    public boolean getRenewableLockByLua(String lockKey, String value, long expireTime, TimeUnit timeUnit) {
+        String key = keyStrategy.apply(lockKey);
+        long expireMillis = Math.max(toMillis(expireTime, timeUnit), leaseRenewalScheduler.getMinLeaseMillis());
+        boolean lock = tryLock(key, value, expireMillis);
+        if (lock) {
+            leaseRenewalScheduler.register(key, value, expireMillis);
+        }
+        return lock;
+    }
+
+    /**
+     * @param [lockKey, value, expireTime, timeUnit]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 获取锁, 原子操作。过期时间精确到毫秒.经过LockBackend, Redis中为SET NX PX, 与getLock相同
+     * @date 22:08 2019/9/16
+     **/
+    public boolean getLockByLua(String lockKey, String value, long expireTime, TimeUnit timeUnit) {
+        return tryLock(keyStrategy.apply(lockKey), value, toMillis(expireTime, timeUnit));
+    }
+
+    /**
+     * @param []
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description 生成锁的value.各节点、各线程唯一,见LockTokenGenerator
+     * @date 20:35 2019/10/1
+     **/
+    public String nextToken() {
+        return tokenGenerator.next();
+    }
+
+    /**
+     * @param [lockKey, expireTime, timeUnit]
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description 与getLockByLua相同, value由nextToken()生成。成功返回value, 释放时传给releaseLockByLua; 失败返回null
+     * @date 20:38 2019/10/1
+     **/
+    public String acquireByLua(String lockKey, long expireTime, TimeUnit timeUnit) {
+        String value = tokenGenerator.next();
+        return getLockByLua(lockKey, value, expireTime, timeUnit) ? value : null;
+    }
+
+    /**
+     * 尝试获取锁的LUA脚本：获取成功返回nil,失败返回锁的剩余过期时间(毫秒)
+     */
+    public static final String TRY_LOCK_SCRIPT_LUA = "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return nil end " +
+            "return redis.call('pttl', KEYS[1])";
+
+    /**
+     * 订阅不可用时退避重试的初始和最大间隔.以毫秒为单位
+     */
+    private static final long BACKOFF_BASE_MILLIS = 5L;
+    private static final long BACKOFF_MAX_MILLIS = 200L;
+
+    /**
+     * @param [lockKey, value, expireTime, waitTime, timeUnit]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 使用LUA脚本获取锁, 获取不到时最多等待waitTime。
+     * 等待期间订阅该key的释放频道, 只在锁被释放或过期时重试; 订阅不可用时退化为带随机抖动的指数退避重试
+     * @date 22:02 2019/9/18
+     **/
+    public boolean tryLockByLua(String lockKey, String value, long expireTime, long waitTime, TimeUnit timeUnit) throws InterruptedException {
+        String key = keyStrategy.apply(lockKey);
+        long expireMillis = toMillis(expireTime, timeUnit);
+        long start = System.nanoTime();
+        boolean lock = false;
+        try {
+            lock = circuitBreaker.callInterruptibly(() -> waitLock(key, waitTime, timeUnit, () -> {
+                Long ttl = lockBackend.tryLockOrTtl(key, value, expireMillis);
+                return ttl == null ? 1L : -1L - ttl;
+            })) > 0;
+            return lock;
+        } finally {
+            acquired(key, start, lock);
+        }
+    }
+
+    /**
+     * @param [lockKey, expireTime, waitTime, timeUnit]
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description 与tryLockByLua相同, value由nextToken()生成。成功返回value, 释放时传给releaseLockByLua; 失败返回null
+     * @date 20:40 2019/10/1
+     **/
+    public String tryAcquireByLua(String lockKey, long expireTime, long waitTime, TimeUnit timeUnit) throws InterruptedException {
+        String value = tokenGenerator.next();
+        return tryLockByLua(lockKey, value, expireTime, waitTime, timeUnit) ? value : null;
+    }
+
+    /**
+     * fencing token计数器key的后缀
+     */
+    public static final String FENCE_SUFFIX = ":fence";
+
+    /**
+     * 获取锁并生成fencing token的LUA脚本：获取成功返回自增后的token(从1开始),失败返回-1-锁的剩余过期时间(毫秒).
+     * KEYS[1]为锁,KEYS[2]为计数器,计数器不设置过期时间,保证同一个锁名的token一直递增
+     */
+    public static final String FENCED_LOCK_SCRIPT_LUA = "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+            "return redis.call('incr', KEYS[2]) end " +
+            "return -1 - redis.call('pttl', KEYS[1])";
+
+    /**
+     * @param [lockKey, value, expireTime, timeUnit]
+     * @return long
+     * @author YiHaoXing
+     * @description 获取锁并返回fencing token,获取失败返回0.
+     * token随每次成功加锁单调递增,下游存储记录见过的最大token并拒绝更小token的写入,
+     * 即使持有者在GC停顿中锁已过期,它之后的写入也会被拒绝
+     * @date 21:10 2019/9/25
+     **/
+    public long getLockWithFencingToken(String lockKey, String value, long expireTime, TimeUnit timeUnit) {
+        String key = keyStrategy.apply(lockKey);
+        long start = System.nanoTime();
+        long token = circuitBreaker.call(() -> fencedAttempt(key, value, toMillis(expireTime, timeUnit)));
+        acquired(key, start, token > 0);
+        return Math.max(0L, token);
+    }
+
+    /**
+     * @param [lockKey, value, expireTime, waitTime, timeUnit]
+     * @return long
+     * @author YiHaoXing
+     * @description 获取锁并返回fencing token,获取不到时与tryLockByLua一样最多等待waitTime,失败返回0
+     * @date 21:14 2019/9/25
+     **/
+    public long tryLockWithFencingToken(String lockKey, String value, long expireTime, long waitTime, TimeUnit timeUnit) throws InterruptedException {
+        String key = keyStrategy.apply(lockKey);
+        long expireMillis = toMillis(expireTime, timeUnit);
+        long start = System.nanoTime();
+        long token = 0L;
+        try {
+            token = circuitBreaker.callInterruptibly(() -> waitLock(key, waitTime, timeUnit, () -> fencedAttempt(key, value, expireMillis)));
+            return Math.max(0L, token);
+        } finally {
+            acquired(key, start, token > 0);
+        }
+    }
+
+    /**
+     * fencing token计数器的key.锁的key没有hash tag时以整个key作为计数器的hash tag,集群模式下两者在同一个slot
+     */
+    public static String fenceKey(String lockKey) {
+        return LockKeyStrategy.hasHashTag(lockKey) ? lockKey + FENCE_SUFFIX : "{" + lockKey + "}" + FENCE_SUFFIX;
+    }
+
+    private long fencedAttempt(String lockKey, String value, long expireMillis) {
+        return lockBackend.tryLockWithFence(lockKey, value, expireMillis);
+    }
+
+    /**
+     * 一次加锁尝试.获取成功返回正数,失败返回-1-锁的剩余过期时间(毫秒),锁没有过期时间时为0
+     */
+    @FunctionalInterface
+    private interface LockAttempt {
+        long attempt();
+    }
+
+    /**
+     * @param [lockKey, waitTime, timeUnit, lockAttempt]
+     * @return long
+     * @author YiHaoXing
+     * @description tryLockByLua和tryLockWithFencingToken共用的等待逻辑.返回成功那次尝试的结果,超时返回最后一次失败的结果
+     * @date 21:20 2019/9/25
+     **/
+    private long waitLock(String lockKey, long waitTime, TimeUnit timeUnit, LockAttempt lockAttempt) throws InterruptedException {
+        long deadline = System.nanoTime() + timeUnit.toNanos(waitTime);
+        long result = lockAttempt.attempt();
+        if (result > 0 || waitTime <= 0) {
+            return result;
+        }
+        try (LockBackend.ReleaseWaiter waiter = lockBackend.subscribe(lockKey)) {
+            int attempt = 0;
+            while (true) {
+                //先记录消息数再加锁,加锁失败后只等待这之后的释放消息
+                long generation = waiter.generation();
+                result = lockAttempt.attempt();
+                if (result > 0) {
+                    return result;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return result;
+                }
+                //锁最晚在剩余过期时间后自动释放.没有过期时间时(-1)只能等待释放消息
+                long ttl = -1L - result;
+                long waitNanos = ttl >= 0 ? Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(ttl)) : remaining;
+                if (waiter.isSubscribed()) {
+                    waiter.await(generation, waitNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, backoffNanos(attempt++)));
+                }
+            }
+        }
+    }
+
+    /**
+     * 指数退避,在[间隔/2, 间隔]之间随机,避免多个等待者同时重试
+     */
+    static long backoffNanos(int attempt) {
+        long millis = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt, 16));
+        return TimeUnit.MILLISECONDS.toNanos(millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+    }
+
+    /**
+     * PX不接受0,不足1毫秒按1毫秒处理
+     */
+    private static long toMillis(long expireTime, TimeUnit timeUnit) {
+        return Math.max(1L, timeUnit.toMillis(expireTime));
+    }
+
+    /**
+     * 一次不等待的加锁.key为keyStrategy转换后的key
+     */
+    private boolean tryLock(String key, String value, long expireMillis) {
+        long start = System.nanoTime();
+        return acquired(key, start, circuitBreaker.call(() -> lockBackend.tryLock(key, value, expireMillis)));
+    }
+
+    /**
+     * 记录获取锁的耗时和结果,原样返回结果
+     */
+    private boolean acquired(String lockKey, long startNanos, boolean lock) {
+        long waitNanos = System.nanoTime() - startNanos;
+        lockMetrics.recordAcquire(lockKey, waitNanos, lock);
+        contentionProfiler.record(lockKey, waitNanos, lock);
+        return lock;
+    }
+
+    /**
+     * 记录释放锁的结果.value不匹配时调用方仍认为自己持有该锁,同样减少持有数量
+     */
+    private void recordRelease(String lockKey, boolean released) {
+        if (released) {
+            lockMetrics.recordRelease(lockKey);
+        } else {
+            lockMetrics.recordUnlockNotOwner(lockKey);
+        }
+    }
+
+    /**
+     * 记录释放锁时的异常.Redis不可用时锁留给过期时间清除,调用方不再持有,减少持有数量;其他异常不改变持有数量
+     */
+    private void recordUnlockFailure(String lockKey, RuntimeException e) {
+        if (RedisCircuitBreaker.isUnavailable(e)) {
+            lockMetrics.recordUnlockUnavailable(lockKey);
+        }
+    }
+
+    /**
+     * 批量获取锁的LUA脚本：逐个用set nx px加锁,任意一个key已被占用则删除本次已加上的锁并返回0
+     */
+    public static final String BATCH_LOCK_SCRIPT_LUA = "for i = 1, #KEYS do " +
+            "if not redis.call('set', KEYS[i], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+            "for j = 1, i - 1 do redis.call('del', KEYS[j]) end " +
+            "return 0 end " +
+            "end " +
+            "return 1";
+
+    /**
+     * 批量释放锁的LUA脚本：对每个key执行与UNLOCK_SCRIPT_LUA相同的比较删除并通知等待者,按KEYS的顺序返回每个key是否释放(1/0)
+     */
+    public static final String BATCH_UNLOCK_SCRIPT_LUA = "local released = {} " +
+            "for i = 1, #KEYS do " +
+            "if redis.call('get', KEYS[i]) == ARGV[1] then " +
+            "redis.call('del', KEYS[i]) " +
+            "redis.call('publish', '" + RELEASE_CHANNEL_PREFIX + "' .. KEYS[i], 1) " +
+            "released[i] = 1 " +
+            "else released[i] = 0 end " +
+            "end " +
+            "return released";
+
+    /**
+     * 集群模式下跨slot批量操作的并行度
+     */
+    @Value("${redis.lock.batch.parallelism:8}")
+    private int batchParallelism;
+    private ExecutorService batchExecutor;
+
+    /**
+     * @param [lockKeys, value, expireTime]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 批量获取锁, 一次网络往返, 原子操作。要么全部获取成功, 要么一个都不持有。过期时间单位为秒.
+     * 集群模式下key按slot分组, 每组一个脚本并行执行, 各组之间不是原子的, 任意一组失败时释放其他组已获取的锁
+     * @date 21:10 2019/9/8
+     **/
+    public boolean getLocks(Collection<String> lockKeys, String value, int expireTime) {
+        if (lockKeys.isEmpty()) {
+            return true;
+        }
+        List<String> keys = distinctKeys(lockKeys);
+        long start = System.nanoTime();
+        long expireMillis = toMillis(expireTime, TimeUnit.SECONDS);
+        boolean lock = circuitBreaker.call(() -> lockAll(keys, value, expireMillis));
+        //每个key分别记录,与releaseLocks对应
+        for (String key : keys) {
+            acquired(key, start, lock);
+        }
+        return lock;
+    }
+
+    private boolean lockAll(List<String> keys, String value, long expireMillis) {
+        Collection<List<String>> groups = keyStrategy.groupBySlot(keys, Function.identity());
+        if (groups.size() == 1) {
+            return lockBackend.tryLockAll(keys, value, expireMillis);
+        }
+        boolean lock = true;
+        RuntimeException failure = null;
+        for (CompletableFuture<Boolean> future : executeBySlot(groups, group -> lockBackend.tryLockAll(group, value, expireMillis))) {
+            try {
+                lock &= future.join();
+            } catch (CompletionException e) {
+                lock = false;
+                failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        if (!lock) {
+            //比较value后删除,没有加上锁的组不受影响
+            releaseAll(keys, value);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return lock;
+    }
+
+    /**
+     * @param [lockKeys, value]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 批量释放锁, 一次网络往返, 原子操作。只释放value匹配的key, 全部释放成功返回true.集群模式下按slot分组并行执行
+     * @date 21:12 2019/9/8
+     **/
+    public boolean releaseLocks(Collection<String> lockKeys, String value) {
+        if (lockKeys.isEmpty()) {
+            return true;
+        }
+        List<String> keys = distinctKeys(lockKeys);
+        boolean[] released = circuitBreaker.call(() -> releaseAll(keys, value));
+        boolean all = true;
+        for (int i = 0; i < keys.size(); i++) {
+            recordRelease(keys.get(i), released[i]);
+            all &= released[i];
+        }
+        return all;
+    }
+
+    /**
+     * 比较value后删除,按keys的顺序返回每个key是否释放
+     */
+    private boolean[] releaseAll(List<String> keys, String value) {
+        Collection<List<String>> groups = keyStrategy.groupBySlot(keys, Function.identity());
+        if (groups.size() == 1) {
+            return lockBackend.unlockAll(keys, value);
+        }
+        Set<String> releasedKeys = new HashSet<>();
+        for (CompletableFuture<List<String>> future : executeBySlot(groups, group -> {
+            boolean[] flags = lockBackend.unlockAll(group, value);
+            List<String> releasedInGroup = new ArrayList<>(group.size());
+            for (int i = 0; i < flags.length; i++) {
+                if (flags[i]) {
+                    releasedInGroup.add(group.get(i));
+                }
+            }
+            return releasedInGroup;
+        })) {
+            releasedKeys.addAll(future.join());
+        }
+        boolean[] released = new boolean[keys.size()];
+        for (int i = 0; i < released.length; i++) {
+            released[i] = releasedKeys.contains(keys.get(i));
+        }
+        return released;
+    }
+
+    /**
+     * 转换为Redis中的key并去重.重复的key会导致自身加锁失败
+     */
+    private List<String> distinctKeys(Collection<String> lockKeys) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String lockKey : lockKeys) {
+            keys.add(keyStrategy.apply(lockKey));
+        }
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * 每个slot分组提交一个任务.返回时所有任务都已完成,调用方可以安全地回滚
+     */
+    private <T> List<CompletableFuture<T>> executeBySlot(Collection<List<String>> groups, Function<List<String>, T> call) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(groups.size());
+        for (List<String> group : groups) {
+            futures.add(CompletableFuture.supplyAsync(() -> call.apply(group), batchExecutor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            //由调用方逐个处理
+        }
+        return futures;
+    }
+
+    @PostConstruct
+    public void initBatchExecutor() {
+        if (keyStrategy.isClusterAware()) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            batchExecutor = Executors.newFixedThreadPool(Math.max(1, batchParallelism), runnable -> {
+                Thread thread = new Thread(runnable, "redis-lock-batch-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+        }
     }
 
     // =======================================================================================================================
 
+    @Lazy
     @Autowired
     private RedissonClient redissonClient;
+    @Autowired
+    private LocalLockStripes localLockStripes;
 
     /**
      * @author YiHaoXing
@@ -111,10 +610,16 @@ public class RedisLockUtils {
      * @return void
      **/
     public void getLock(String lockKey,int expireTime, TimeUnit timeUnit){
+        lockKey = keyStrategy.apply(lockKey);
         RLock lock = redissonClient.getLock(lockKey);
-        log.info("Thread:{}正在获取锁...",Thread.currentThread().getId());
+        log.debug("Thread:{}正在获取锁...",Thread.currentThread().getId());
+        long start = System.nanoTime();
         //拿不到锁线程会一直阻塞.直到拿到锁
-        lock.lock(expireTime,timeUnit);
+        circuitBreaker.call(() -> {
+            lock.lock(expireTime, timeUnit);
+            return null;
+        });
+        acquired(lockKey, start, true);
     }
 
     /**
@@ -125,20 +630,24 @@ public class RedisLockUtils {
      * @date 18:16 2019/6/30
      **/
     public boolean getReentrantLock(String lockKey, int waitTime, int expireTime, TimeUnit timeUnit) throws InterruptedException {
+        lockKey = keyStrategy.apply(lockKey);
         RLock lock = redissonClient.getLock(lockKey);
-        log.info("Thread:{}正在获取锁...",Thread.currentThread().getId());
+        log.debug("Thread:{}正在获取锁...",Thread.currentThread().getId());
+        long start = System.nanoTime();
         //拿不到锁会等待waitTime,如果过了waitTime依然没有拿到锁,则获取锁失败.
-        return lock.tryLock(waitTime, expireTime, timeUnit);
+        return acquired(lockKey, start, circuitBreaker.callInterruptibly(() -> lock.tryLock(waitTime, expireTime, timeUnit)));
     }
 
     /**
      * @param [lockKey, waitTime, expireTime, timeUnit, threadId]
      * @return boolean
      * @author YiHaoXing
-     * @description 可重入锁(异步执行)
+     * @description 可重入锁(异步执行).返回时加锁请求通常还未完成,结果几乎总是false,请使用getReentrantLockAsync
      * @date 18:33 2019/6/30
      **/
+    @Deprecated
     public boolean getAsyncReentrantLock(String lockKey, int expireTime, TimeUnit timeUnit, Long threadId) {
+        lockKey = keyStrategy.apply(lockKey);
         RLock lock = redissonClient.getLock(lockKey);
         RFuture<Void> rFuture;
         if (Optional.ofNullable(threadId).isPresent()) {
@@ -150,6 +659,88 @@ public class RedisLockUtils {
         return null == rFuture ? false : rFuture.isSuccess();
     }
 
+    /**
+     * @param [lockKey, waitTime, expireTime, timeUnit]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 两级可重入锁.先在本地锁上排队,本地胜出后再用剩余的等待时间获取Redis锁.
+     * 同一节点上的热点key竞争只有一个线程访问Redis,必须使用unlockTwoLevel释放
+     * @date 21:55 2019/9/12
+     **/
+    public boolean getTwoLevelLock(String lockKey, int waitTime, int expireTime, TimeUnit timeUnit) throws InterruptedException {
+        lockKey = keyStrategy.apply(lockKey);
+        long start = System.nanoTime();
+        long deadline = start + timeUnit.toNanos(waitTime);
+        if (!localLockStripes.tryLock(lockKey, waitTime, timeUnit)) {
+            return acquired(lockKey, start, false);
+        }
+        boolean lock = false;
+        try {
+            long remaining = Math.max(0L, deadline - System.nanoTime());
+            RLock redisLock = redissonClient.getLock(lockKey);
+            lock = circuitBreaker.callInterruptibly(() -> redisLock.tryLock(remaining, timeUnit.toNanos(expireTime), TimeUnit.NANOSECONDS));
+            return acquired(lockKey, start, lock);
+        } finally {
+            if (!lock) {
+                localLockStripes.unlock(lockKey);
+            }
+        }
+    }
+
+    /**
+     * @param [lockKey]
+     * @return void
+     * @author YiHaoXing
+     * @description 释放两级锁.先释放Redis锁,再释放本地锁
+     * @date 21:58 2019/9/12
+     **/
+    public void unlockTwoLevel(String lockKey) {
+        lockKey = keyStrategy.apply(lockKey);
+        try {
+            unlock(lockKey, redissonClient.getLock(lockKey));
+        } finally {
+            localLockStripes.unlock(lockKey);
+        }
+    }
+
+    /**
+     * @param [e]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 获取锁失败的原因是Redis不可用(包括熔断打开),并且降级策略为LOCAL,此时可以改用getDegradedLock
+     * @date 21:05 2019/10/5
+     **/
+    public boolean canDegrade(Throwable e) {
+        return circuitBreaker.canDegrade(e);
+    }
+
+    /**
+     * @param [lockKey, waitTime, timeUnit]
+     * @return boolean
+     * @author YiHaoXing
+     * @description Redis不可用时的降级锁.只获取JVM本地锁,仅保证本节点内互斥,必须使用unlockDegraded释放
+     * @date 21:08 2019/10/5
+     **/
+    public boolean getDegradedLock(String lockKey, long waitTime, TimeUnit timeUnit) throws InterruptedException {
+        lockKey = keyStrategy.apply(lockKey);
+        long start = System.nanoTime();
+        circuitBreaker.recordDegraded();
+        return acquired(lockKey, start, localLockStripes.tryLock(lockKey, waitTime, timeUnit));
+    }
+
+    /**
+     * @param [lockKey]
+     * @return void
+     * @author YiHaoXing
+     * @description 释放降级锁
+     * @date 21:10 2019/10/5
+     **/
+    public void unlockDegraded(String lockKey) {
+        lockKey = keyStrategy.apply(lockKey);
+        localLockStripes.unlock(lockKey);
+        lockMetrics.recordRelease(lockKey);
+    }
+
     /**
      * @author YiHaoXing
      * @description 公平锁
@@ -158,18 +749,22 @@ public class RedisLockUtils {
      * @return boolean
      **/
     public boolean getFairLock(String lockKey, int waitTime, int expireTime, TimeUnit timeUnit) throws InterruptedException {
+        lockKey = keyStrategy.apply(lockKey);
         RLock fairLock = redissonClient.getFairLock(lockKey);
-        return fairLock.tryLock(waitTime, expireTime, timeUnit);
+        long start = System.nanoTime();
+        return acquired(lockKey, start, circuitBreaker.callInterruptibly(() -> fairLock.tryLock(waitTime, expireTime, timeUnit)));
     }
 
     /**
      * @author YiHaoXing
-     * @description 公平锁(异步执行)
+     * @description 公平锁(异步执行).返回时加锁请求通常还未完成,结果几乎总是false,请使用getFairLockAsync
      * @date 18:48 2019/6/30
      * @param [lockKey, expireTime, timeUnit, threadId]
      * @return boolean
      **/
+    @Deprecated
     public boolean getAsyncFairLock(String lockKey, int expireTime, TimeUnit timeUnit, Long threadId) {
+        lockKey = keyStrategy.apply(lockKey);
         RLock fairLock = redissonClient.getFairLock(lockKey);
         RFuture<Void> rFuture;
         if (Optional.ofNullable(threadId).isPresent()) {
@@ -183,21 +778,197 @@ public class RedisLockUtils {
 
     /**
      * @author YiHaoXing
-     * @description 读写锁
+     * @description 读写锁.获取的是写锁, 使用unlockWriteLock释放
      * @date 18:58 2019/6/30
      * @param [lockKey, waitTime, expireTime, timeUnit, threadId]
      * @return boolean
      **/
     public boolean getReadWriteLock(String lockKey, int waitTime,int expireTime, TimeUnit timeUnit, Long threadId) throws InterruptedException {
+        lockKey = keyStrategy.apply(lockKey);
         RReadWriteLock readWriteLock = redissonClient.getReadWriteLock(lockKey);
         //读锁
         //return readWriteLock.readLock().tryLock(waitTime, expireTime, timeUnit);
 
         //写锁
-        return readWriteLock.writeLock().tryLock(waitTime, expireTime, timeUnit);
+        long start = System.nanoTime();
+        return acquired(lockKey, start, circuitBreaker.callInterruptibly(() -> readWriteLock.writeLock().tryLock(waitTime, expireTime, timeUnit)));
+    }
+
+    /**
+     * @param [lockKey]
+     * @return void
+     * @author YiHaoXing
+     * @description 释放getReadWriteLock获取的写锁
+     * @date 20:28 2019/10/6
+     **/
+    public void unlockWriteLock(String lockKey) {
+        lockKey = keyStrategy.apply(lockKey);
+        unlock(lockKey, redissonClient.getReadWriteLock(lockKey).writeLock());
+    }
+
+    // =======================================================================================================================
+
+    /**
+     * 异步锁的持有者标识.取负数,避免与真实线程ID冲突
+     */
+    private static final AtomicLong ASYNC_OWNER_ID = new AtomicLong();
+
+    /**
+     * @param [lockKey, waitTime, expireTime, timeUnit]
+     * @return java.util.concurrent.CompletionStage<com.demo.redis.LockHandle>
+     * @author YiHaoXing
+     * @description 可重入锁(非阻塞).在waitTime内未获取到锁则以TimeoutException异常完成
+     * @date 22:31 2019/9/10
+     **/
+    public CompletionStage<LockHandle> getReentrantLockAsync(String lockKey, long waitTime, long expireTime, TimeUnit timeUnit) {
+        lockKey = keyStrategy.apply(lockKey);
+        return tryLockAsync(lockKey, redissonClient.getLock(lockKey), waitTime, expireTime, timeUnit);
     }
 
+    /**
+     * @param [lockKey, waitTime, expireTime, timeUnit]
+     * @return java.util.concurrent.CompletionStage<com.demo.redis.LockHandle>
+     * @author YiHaoXing
+     * @description 公平锁(非阻塞)
+     * @date 22:33 2019/9/10
+     **/
+    public CompletionStage<LockHandle> getFairLockAsync(String lockKey, long waitTime, long expireTime, TimeUnit timeUnit) {
+        lockKey = keyStrategy.apply(lockKey);
+        return tryLockAsync(lockKey, redissonClient.getFairLock(lockKey), waitTime, expireTime, timeUnit);
+    }
 
+    /**
+     * @param [lockKey, waitTime, expireTime, timeUnit]
+     * @return java.util.concurrent.CompletionStage<com.demo.redis.LockHandle>
+     * @author YiHaoXing
+     * @description 读锁(非阻塞)
+     * @date 22:35 2019/9/10
+     **/
+    public CompletionStage<LockHandle> getReadLockAsync(String lockKey, long waitTime, long expireTime, TimeUnit timeUnit) {
+        lockKey = keyStrategy.apply(lockKey);
+        return tryLockAsync(lockKey, redissonClient.getReadWriteLock(lockKey).readLock(), waitTime, expireTime, timeUnit);
+    }
+
+    /**
+     * @param [lockKey, waitTime, expireTime, timeUnit]
+     * @return java.util.concurrent.CompletionStage<com.demo.redis.LockHandle>
+     * @author YiHaoXing
+     * @description 写锁(非阻塞)
+     * @date 22:36 2019/9/10
+     **/
+    public CompletionStage<LockHandle> getWriteLockAsync(String lockKey, long waitTime, long expireTime, TimeUnit timeUnit) {
+        lockKey = keyStrategy.apply(lockKey);
+        return tryLockAsync(lockKey, redissonClient.getReadWriteLock(lockKey).writeLock(), waitTime, expireTime, timeUnit);
+    }
+
+    /**
+     * 回调在Redisson的netty线程中执行,耗时的后续操作应使用thenXxxAsync切换线程.熔断打开时以RedisUnavailableException完成
+     */
+    private CompletionStage<LockHandle> tryLockAsync(String lockKey, RLock lock, long waitTime, long expireTime, TimeUnit timeUnit) {
+        long ownerId = -ASYNC_OWNER_ID.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<LockHandle> result = new CompletableFuture<>();
+        circuitBreaker.callAsync(() -> lock.tryLockAsync(waitTime, expireTime, timeUnit, ownerId)).whenComplete((locked, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else if (acquired(lockKey, start, locked)) {
+                result.complete(new LockHandle(lockKey, ownerId, lock, lockMetrics));
+            } else {
+                result.completeExceptionally(new TimeoutException("Lock " + lockKey + " not acquired within " + waitTime + " " + timeUnit));
+            }
+        });
+        return result;
+    }
+
+    @Autowired(required = false)
+    private QuorumLockClient quorumLockClient;
+
+    /**
+     * @param [lockKey, waitTime, expireTime, timeUnit]
+     * @return java.util.concurrent.CompletionStage<com.demo.redis.LockHandle>
+     * @author YiHaoXing
+     * @description RedLock(非阻塞).在redis.lock.redlock.addresses配置的所有master上并行加锁,多数节点成功即获取成功,
+     * 否则以TimeoutException异常完成.释放锁使用LockHandle.unlockAsync()
+     * @date 20:40 2019/9/27
+     **/
+    public CompletionStage<LockHandle> getQuorumLockAsync(String lockKey, long waitTime, long expireTime, TimeUnit timeUnit) {
+        if (quorumLockClient == null) {
+            throw new IllegalStateException("redis.lock.redlock.addresses is not configured");
+        }
+        String key = keyStrategy.apply(lockKey);
+        long start = System.nanoTime();
+        return quorumLockClient.tryLockAsync(key, -ASYNC_OWNER_ID.incrementAndGet(), waitTime, expireTime, timeUnit, lockMetrics)
+                .whenComplete((handle, e) -> acquired(key, start, e == null));
+    }
+
+    /**
+     * @param [lockKey, waitTime, expireTime, timeUnit]
+     * @return com.demo.redis.LockHandle
+     * @author YiHaoXing
+     * @description RedLock.获取失败返回null
+     * @date 20:43 2019/9/27
+     **/
+    public LockHandle getQuorumLock(String lockKey, long waitTime, long expireTime, TimeUnit timeUnit) throws InterruptedException {
+        try {
+            return getQuorumLockAsync(lockKey, waitTime, expireTime, timeUnit).toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                return null;
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        }
+    }
+
+    // =======================================================================================================================
+
+    /**
+     * @param [semaphoreKey, permits, waitTime, leaseTime, timeUnit]
+     * @return java.lang.String
+     * @author YiHaoXing
+     * @description 获取一个许可,最多permits个持有者同时持有.返回许可ID,未获取到返回null.
+     * 许可在leaseTime后自动失效,持有者宕机不会泄漏许可.许可总数只在信号量不存在时设置,之后传入不同的permits不会生效.
+     * 先不等待地获取一次,失败时调用幂等的trySetPermits再等待:信号量第一次使用、被删除或主从切换后丢失时都会重新设置,
+     * 获取成功时只有一次往返
+     * @date 20:15 2019/9/24
+     **/
+    public String tryAcquirePermit(String semaphoreKey, int permits, long waitTime, long leaseTime, TimeUnit timeUnit) throws InterruptedException {
+        String key = keyStrategy.apply(semaphoreKey);
+        RPermitExpirableSemaphore semaphore = redissonClient.getPermitExpirableSemaphore(key);
+        long start = System.nanoTime();
+        String permitId = circuitBreaker.callInterruptibly(() -> {
+            String id = semaphore.tryAcquire(0, leaseTime, timeUnit);
+            if (id != null) {
+                return id;
+            }
+            semaphore.trySetPermits(permits);
+            //剩余等待时间按毫秒计算;leaseTime为-1时许可不过期,不能换算
+            long remaining = Math.max(0L, timeUnit.toMillis(waitTime) - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return semaphore.tryAcquire(remaining, leaseTime < 0 ? leaseTime : timeUnit.toMillis(leaseTime), TimeUnit.MILLISECONDS);
+        });
+        acquired(key, start, permitId != null);
+        return permitId;
+    }
+
+    /**
+     * @param [semaphoreKey, permitId]
+     * @return boolean
+     * @author YiHaoXing
+     * @description 释放许可.许可已过期时返回false
+     * @date 20:18 2019/9/24
+     **/
+    public boolean releasePermit(String semaphoreKey, String permitId) {
+        semaphoreKey = keyStrategy.apply(semaphoreKey);
+        RPermitExpirableSemaphore semaphore = redissonClient.getPermitExpirableSemaphore(semaphoreKey);
+        boolean released;
+        try {
+            released = circuitBreaker.call(() -> semaphore.tryRelease(permitId));
+        } catch (RuntimeException e) {
+            recordUnlockFailure(semaphoreKey, e);
+            throw e;
+        }
+        recordRelease(semaphoreKey, released);
+        return released;
+    }
 
     /**
      * @param [lockKey]
@@ -207,10 +978,33 @@ public class RedisLockUtils {
      * @date 18:25 2019/6/30
      **/
     public void unlock(String lockKey) {
-        RLock lock = redissonClient.getLock(lockKey);
+        lockKey = keyStrategy.apply(lockKey);
+        unlock(lockKey, redissonClient.getLock(lockKey));
+    }
+
+    /**
+     * 释放Redisson锁.通常在finally中调用,Redis不可用(包括熔断打开)时只记录日志,锁在过期后自动清除,
+     * 不抛出异常覆盖业务方法的返回值或异常
+     */
+    private void unlock(String lockKey, RLock lock) {
         //如果释放锁的时候,redis的锁已经因为超时自动清除了.此时会报异常
         //java.lang.IllegalMonitorStateException: attempt to unlock lock, not locked by current thread by node id: 2ca6b4a4-60d1-424d-b131-9f139be12ff4 thread-id: 47
-        lock.unlock();
+        try {
+            circuitBreaker.call(() -> {
+                lock.unlock();
+                return null;
+            });
+            lockMetrics.recordRelease(lockKey);
+        } catch (IllegalMonitorStateException e) {
+            lockMetrics.recordUnlockNotOwner(lockKey);
+            throw e;
+        } catch (RuntimeException e) {
+            if (!RedisCircuitBreaker.isUnavailable(e)) {
+                throw e;
+            }
+            lockMetrics.recordUnlockUnavailable(lockKey);
+            log.warn("Redis不可用,锁{}未释放,将在过期后自动清除: {}", lockKey, e.getMessage());
+        }
     }
 
 }
\ No newline at end of file
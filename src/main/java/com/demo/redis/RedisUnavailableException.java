@@ -0,0 +1,15 @@
+package com.demo.redis;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.RedisUnavailableException
+ * @description 熔断打开期间的调用立即以此异常失败,不访问Redis.不填充堆栈,熔断期间每次调用只有微秒级开销
+ * @date 2019/10/5 20:10
+ */
+public class RedisUnavailableException extends RuntimeException {
+
+    public RedisUnavailableException(String message) {
+        super(message, null, false, false);
+    }
+}
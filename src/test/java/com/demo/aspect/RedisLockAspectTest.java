@@ -0,0 +1,73 @@
+package com.demo.aspect;
+
+import com.demo.annotation.RedisLock;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.aspect.RedisLockAspectTest
+ * @description 异步方法上只对同步方法生效的属性在第一次调用时失败,不访问Redis
+ * @date 2019/10/7 21:40
+ */
+public class RedisLockAspectTest {
+
+    private AsyncService service;
+
+    @Before
+    public void setUp() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new AsyncService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new RedisLockAspect());
+        service = factory.getProxy();
+    }
+
+    @Test
+    public void asyncLocalFirstFailsFast() {
+        assertRejected(service::localFirst);
+    }
+
+    @Test
+    public void asyncFencingFailsFast() {
+        assertRejected(service::fencing);
+    }
+
+    @Test
+    public void asyncDegradableFailsFast() {
+        assertRejected(service::degradable);
+    }
+
+    private static void assertRejected(Runnable call) {
+        try {
+            call.run();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("AsyncService"));
+        }
+    }
+
+    public static class AsyncService {
+
+        @RedisLock(value = "async", localFirst = true)
+        public CompletableFuture<String> localFirst() {
+            return CompletableFuture.completedFuture("localFirst");
+        }
+
+        @RedisLock(value = "async", fencing = true)
+        public CompletableFuture<String> fencing() {
+            return CompletableFuture.completedFuture("fencing");
+        }
+
+        @RedisLock(value = "async", degradable = true)
+        public CompletableFuture<String> degradable() {
+            return CompletableFuture.completedFuture("degradable");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.demo.aspect;
+
+import com.demo.annotation.RedisLock;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.aspect.RedisLockMetadataTest
+ * @description value为静态key,只有key属性按SpEL解析;表达式结果为空时拒绝加锁
+ * @date 2019/10/7 21:55
+ */
+public class RedisLockMetadataTest {
+
+    @Test
+    public void valueIsAlwaysLiteral() throws NoSuchMethodException {
+        assertEquals("order#1", metadata("literal").resolveKey(new Object[]{"ignored"}));
+    }
+
+    @Test
+    public void keyIsSpel() throws NoSuchMethodException {
+        assertEquals("order:42", metadata("expression").resolveKey(new Object[]{"42"}));
+    }
+
+    @Test
+    public void nullKeyIsRejected() throws NoSuchMethodException {
+        try {
+            metadata("id").resolveKey(new Object[]{null});
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(".id(") && e.getMessage().contains("#orderId"));
+        }
+    }
+
+    @Test
+    public void emptyKeyIsRejected() throws NoSuchMethodException {
+        try {
+            metadata("bare").resolveKey(new Object[]{""});
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("bare"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void valueAndKeyAreExclusive() throws NoSuchMethodException {
+        metadata("both");
+    }
+
+    private static RedisLockMetadata<RedisLock> metadata(String name) throws NoSuchMethodException {
+        Method method = Locked.class.getMethod(name, String.class);
+        RedisLock redisLock = method.getAnnotation(RedisLock.class);
+        return new RedisLockMetadata<>(method, redisLock, redisLock.value(), redisLock.key());
+    }
+
+    public static class Locked {
+
+        @RedisLock("order#1")
+        public void literal(String orderId) {
+        }
+
+        @RedisLock(key = "'order:' + #orderId")
+        public void expression(String orderId) {
+        }
+
+        @RedisLock(key = "#orderId")
+        public void id(String orderId) {
+        }
+
+        @RedisLock(key = "#p0")
+        public void bare(String orderId) {
+        }
+
+        @RedisLock(value = "order", key = "#orderId")
+        public void both(String orderId) {
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.demo.cache;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.cache.CompactKeyGeneratorTest
+ * @description 不同的参数列表得到不同的key:null、类型不同但字符串形式相同的值、数组,以及参数部分在maxLength边界上的哈希
+ * @date 2019/10/7 23:30
+ */
+public class CompactKeyGeneratorTest {
+
+    private static final int MAX_LENGTH = 16;
+
+    private final CompactKeyGenerator generator = new CompactKeyGenerator(MAX_LENGTH);
+    private final Target target = new Target();
+
+    @Test
+    public void nullIsNotAString() {
+        assertDistinct(key(null), key("null"), key("\\0"), key(""));
+        assertEquals(prefix() + ":\\0", key(null));
+        assertEquals(prefix() + ":\\\\0", key("\\0"));
+    }
+
+    @Test
+    public void scalarsAreTypeTagged() {
+        assertDistinct(key(1), key(1L), key("1"), key((short) 1), key((byte) 1), key('1'), key(1.0D), key(1.0F));
+        assertDistinct(key(Boolean.TRUE), key("true"));
+        assertDistinct(key(TimeUnit.SECONDS), key("SECONDS"));
+        assertEquals(prefix() + ":\\i1", key(1));
+        assertEquals(prefix() + ":\\l1", key(1L));
+        assertEquals(prefix() + ":1", key("1"));
+        assertEquals(prefix() + ":\\ztrue", key(true));
+        //字符串中的\已转义,不会被当作类型标记
+        assertDistinct(key("\\i1"), key(1));
+    }
+
+    @Test
+    public void arraysAreDistinct() {
+        assertDistinct(
+                key(new Object[]{"a", "b"}),
+                key("a,b"),
+                key("[a,b]"),
+                key(new Object[]{new Object[]{"a"}, "b"}),
+                key(new Object[]{"a", new Object[]{"b"}}),
+                key(new Object[]{"a", null}),
+                key(new Object[]{"a", "null"}),
+                key(new int[]{1, 2}),
+                key(new long[]{1, 2}),
+                key(new short[]{1, 2}),
+                key(new Object[]{1, 2}),
+                key(new Object[]{1L, 2L}),
+                key(new char[]{'a', 'b'}),
+                key(new byte[]{0x0a, 0x0b}),
+                key(new Object[0]),
+                key(new int[0]));
+        assertEquals(prefix() + ":[\\i1,\\0]", key(new Object[]{1, null}));
+        assertEquals(prefix() + ":\\l[1,2]", key(new long[]{1, 2}));
+        //两个参数与一个含:的参数不同
+        assertNotEquals(generator.generate(target, pair(), "a", "b"), key("a:b"));
+    }
+
+    @Test
+    public void hashesOnlyAboveMaxLength() {
+        String prefix = prefix();
+        //参数部分正好MAX_LENGTH时不哈希
+        assertEquals(prefix + ":" + repeat('7', MAX_LENGTH), key(repeat('7', MAX_LENGTH)));
+        assertEquals(prefix + ":\\l" + repeat('7', MAX_LENGTH - 2), key(Long.valueOf(repeat('7', MAX_LENGTH - 2))));
+        assertTrue(key(Long.valueOf(repeat('7', MAX_LENGTH - 1))).startsWith(prefix + ":#"));
+
+        String above = key(repeat('7', MAX_LENGTH + 1));
+        assertTrue(above, above.matches(java.util.regex.Pattern.quote(prefix) + ":#[0-9a-f]{64}"));
+        assertNotEquals(above, key(repeat('7', MAX_LENGTH + 2)));
+        //各节点得到相同的key
+        assertEquals(above, new CompactKeyGenerator(MAX_LENGTH).generate(target, find(), repeat('7', MAX_LENGTH + 1)));
+
+        //转义字符计入长度:8个:转义后为16个字符,不哈希;9个转义后超过
+        assertEquals(prefix + ":" + repeat(':', MAX_LENGTH / 2).replace(":", "\\:"), key(repeat(':', MAX_LENGTH / 2)));
+        assertTrue(key(repeat(':', MAX_LENGTH / 2 + 1)).startsWith(prefix + ":#"));
+        //超过MAX_LENGTH的单个字符串带长度写入,与数组中的同一字符串不同
+        assertNotEquals(key(repeat('1', MAX_LENGTH + 1)), key(new Object[]{repeat('1', MAX_LENGTH + 1)}));
+    }
+
+    private String key(Object param) {
+        return (String) generator.generate(target, find(), param);
+    }
+
+    private String prefix() {
+        return (String) generator.generate(target, find());
+    }
+
+    private static void assertDistinct(String... keys) {
+        List<String> list = Arrays.asList(keys);
+        assertEquals(list.toString(), keys.length, new HashSet<>(list).size());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static Method find() {
+        return method("find", Object.class);
+    }
+
+    private static Method pair() {
+        return method("pair", Object.class, Object.class);
+    }
+
+    private static Method method(String name, Class<?>... parameterTypes) {
+        try {
+            return Target.class.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Target {
+
+        public Object find(Object param) {
+            return param;
+        }
+
+        public Object pair(Object first, Object second) {
+            return first;
+        }
+    }
+}
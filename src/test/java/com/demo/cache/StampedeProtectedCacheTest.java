@@ -0,0 +1,150 @@
+package com.demo.cache;
+
+import com.demo.redis.RedisLockUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.cache.StampedeProtectedCacheTest
+ * @description 多个StampedeProtectedCache共用同一个底层缓存和InMemoryLockBackend,模拟多个节点:
+ * 只有一个加载者、等待超时不在锁外加载、XFetch提前刷新
+ * @date 2019/10/7 23:00
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "redis.lock.backend=memory",
+        "spring.redis.host=127.0.0.1",
+        "spring.redis.port=1",
+        "spring.redis.password=",
+        "redis.lock.leader.enabled=false"
+})
+public class StampedeProtectedCacheTest {
+
+    @Autowired
+    private ObjectProvider<RedisLockUtils> redisLockUtils;
+
+    @Test
+    public void onlyOneNodeLoads() throws Exception {
+        Cache shared = new ConcurrentMapCache("single");
+        StampedeProtectedCache.Settings settings = new StampedeProtectedCache.Settings(60_000, 0, 5_000, 10_000);
+        List<StampedeProtectedCache> nodes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(new StampedeProtectedCache(shared, redisLockUtils, settings));
+        }
+        AtomicInteger loads = new AtomicInteger();
+        Callable<String> loader = () -> {
+            loads.incrementAndGet();
+            Thread.sleep(200);
+            return "value";
+        };
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            StampedeProtectedCache node = nodes.get(t % nodes.size());
+            futures.add(executor.submit(() -> {
+                start.await();
+                return node.get("k", loader);
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<Object> future : futures) {
+                assertEquals("value", future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void waiterTimesOutWithoutLoading() {
+        StampedeProtectedCache cache = new StampedeProtectedCache(new ConcurrentMapCache("timeout"), redisLockUtils,
+                new StampedeProtectedCache.Settings(60_000, 0, 100, 10_000));
+        String lockKey = StampedeProtectedCache.LOCK_KEY_PREFIX + "timeout::k";
+        //另一个节点持有加载锁且一直没有写入值
+        String token = redisLockUtils.getObject().acquireByLua(lockKey, 10_000, TimeUnit.MILLISECONDS);
+        assertNotNull(token);
+        AtomicInteger loads = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            cache.get("k", () -> loads.incrementAndGet());
+            fail("expected ValueRetrievalException");
+        } catch (Cache.ValueRetrievalException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof TimeoutException);
+        } finally {
+            redisLockUtils.getObject().releaseLockByLua(lockKey, token);
+        }
+        assertEquals(0, loads.get());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void waiterLoadsAfterFailedLoaderReleases() throws Exception {
+        StampedeProtectedCache cache = new StampedeProtectedCache(new ConcurrentMapCache("retry"), redisLockUtils,
+                new StampedeProtectedCache.Settings(60_000, 0, 300, 10_000));
+        String lockKey = StampedeProtectedCache.LOCK_KEY_PREFIX + "retry::k";
+        String token = redisLockUtils.getObject().acquireByLua(lockKey, 10_000, TimeUnit.MILLISECONDS);
+        assertNotNull(token);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            //加载者失败,没有写入值就释放了锁
+            Future<?> failedLoader = executor.submit(() -> {
+                Thread.sleep(50);
+                return redisLockUtils.getObject().releaseLockByLua(lockKey, token);
+            });
+            assertEquals("loaded", cache.get("k", () -> "loaded"));
+            failedLoader.get(1, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("loaded", cache.get("k", () -> "reloaded"));
+    }
+
+    @Test
+    public void xfetchRefreshesBeforeExpiry() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        Callable<Integer> loader = () -> {
+            Thread.sleep(20);
+            return loads.incrementAndGet();
+        };
+        //beta为0时到期前不刷新
+        StampedeProtectedCache lazy = new StampedeProtectedCache(new ConcurrentMapCache("lazy"), redisLockUtils,
+                new StampedeProtectedCache.Settings(60_000, 0, 1_000, 10_000));
+        assertEquals(1, (int) lazy.get("k", loader));
+        assertEquals(1, (int) lazy.get("k", loader));
+
+        //加载耗时*beta远大于剩余时间,每次读取都提前刷新,刷新期间不把旧值当作过期
+        StampedeProtectedCache eager = new StampedeProtectedCache(new ConcurrentMapCache("eager"), redisLockUtils,
+                new StampedeProtectedCache.Settings(60_000, 1_000_000, 1_000, 10_000));
+        assertEquals(2, (int) eager.get("k", loader));
+        assertEquals(3, (int) eager.get("k", loader));
+        assertEquals(3, eager.get("k", Integer.class).intValue());
+    }
+}
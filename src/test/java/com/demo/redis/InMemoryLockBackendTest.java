@@ -0,0 +1,240 @@
+package com.demo.redis;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.InMemoryLockBackendTest
+ * @description InMemoryLockBackend的语义应与RedisLockBackend一致:SET NX PX、按截止时间过期、比较删除、续期和递增的fencing token
+ * @date 2019/10/7 10:20
+ */
+public class InMemoryLockBackendTest {
+
+    private InMemoryLockBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryLockBackend();
+    }
+
+    @After
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Test
+    public void tryLockIsSetIfAbsent() {
+        assertTrue(backend.tryLock("k", "a", 10_000));
+        assertFalse(backend.tryLock("k", "a", 10_000));
+        assertFalse(backend.tryLock("k", "b", 10_000));
+        assertTrue(backend.tryLock("other", "b", 10_000));
+    }
+
+    @Test
+    public void tryLockOrTtlReturnsRemainingTime() {
+        assertNull(backend.tryLockOrTtl("k", "a", 10_000));
+        Long ttl = backend.tryLockOrTtl("k", "b", 10_000);
+        assertNotNull(ttl);
+        assertTrue("ttl: " + ttl, ttl > 9_000 && ttl <= 10_000);
+    }
+
+    @Test
+    public void expiredLockCanBeAcquiredAgain() throws InterruptedException {
+        assertTrue(backend.tryLock("k", "a", 50));
+        Thread.sleep(80);
+        //时间轮还没有清理时,按截止时间判断已过期
+        assertTrue(backend.tryLock("k", "b", 10_000));
+        assertFalse(backend.unlock("k", "a"));
+    }
+
+    @Test
+    public void timerRemovesExpiredLockAndWakesWaiters() throws InterruptedException {
+        try (LockBackend.ReleaseWaiter waiter = backend.subscribe("k")) {
+            long generation = waiter.generation();
+            assertTrue(backend.tryLock("k", "a", 50));
+            //期间不访问该key,只能由时间轮清理并通知
+            assertTrue(waiter.await(generation, 2, TimeUnit.SECONDS));
+        }
+        assertEquals(0, backend.size());
+    }
+
+    @Test
+    public void awaitTimesOutWithoutRelease() throws InterruptedException {
+        assertTrue(backend.tryLock("k", "a", 10_000));
+        try (LockBackend.ReleaseWaiter waiter = backend.subscribe("k")) {
+            assertTrue(waiter.isSubscribed());
+            assertFalse(waiter.await(waiter.generation(), 50, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void unlockComparesValue() throws InterruptedException {
+        assertTrue(backend.tryLock("k", "a", 10_000));
+        assertFalse(backend.unlock("k", "b"));
+        assertFalse(backend.tryLock("k", "b", 10_000));
+        try (LockBackend.ReleaseWaiter waiter = backend.subscribe("k")) {
+            long generation = waiter.generation();
+            assertTrue(backend.unlock("k", "a"));
+            assertTrue(waiter.await(generation, 0, TimeUnit.MILLISECONDS));
+        }
+        assertFalse(backend.unlock("k", "a"));
+        assertFalse(backend.unlock("missing", "a"));
+        assertTrue(backend.tryLock("k", "b", 10_000));
+        assertEquals(1, backend.size());
+    }
+
+    @Test
+    public void renewExtendsOnlyOwnedLiveLocks() throws InterruptedException {
+        assertTrue(backend.tryLock("owned", "a", 100));
+        assertTrue(backend.tryLock("expired", "a", 20));
+        Thread.sleep(40);
+        boolean[] renewed = backend.renew(Arrays.asList("owned", "expired", "missing", "owned"),
+                Arrays.asList("a", "a", "a", "b"), new long[]{10_000, 10_000, 10_000, 10_000});
+        assertArrayEquals(new boolean[]{true, false, false, false}, renewed);
+        //超过原来的过期时间后仍被持有,时间轮按新的截止时间重新登记
+        Thread.sleep(150);
+        assertFalse(backend.tryLock("owned", "b", 10_000));
+        Long ttl = backend.tryLockOrTtl("owned", "b", 10_000);
+        assertTrue("ttl: " + ttl, ttl != null && ttl > 9_000);
+        assertTrue(backend.unlock("owned", "a"));
+    }
+
+    @Test
+    public void fencingTokensIncreasePerKey() throws InterruptedException {
+        assertEquals(1L, backend.tryLockWithFence("k", "a", 10_000));
+        long failed = backend.tryLockWithFence("k", "b", 10_000);
+        assertTrue("failed: " + failed, failed < -9_000);
+        assertTrue(backend.unlock("k", "a"));
+        assertEquals(2L, backend.tryLockWithFence("k", "b", 30));
+        Thread.sleep(60);
+        //过期不重置计数器
+        assertEquals(3L, backend.tryLockWithFence("k", "c", 10_000));
+        assertEquals(1L, backend.tryLockWithFence("other", "a", 10_000));
+    }
+
+    @Test
+    public void concurrentFencingTokensAreUniqueAndOrdered() throws Exception {
+        int threads = 8;
+        int rounds = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String value = "owner-" + t;
+            futures.add(executor.submit(() -> {
+                List<Long> tokens = new ArrayList<>();
+                start.await();
+                while (tokens.size() < rounds) {
+                    long token = backend.tryLockWithFence("k", value, 10_000);
+                    if (token > 0) {
+                        tokens.add(token);
+                        assertTrue(backend.unlock("k", value));
+                    }
+                }
+                return tokens;
+            }));
+        }
+        start.countDown();
+        Set<Long> all = new HashSet<>();
+        try {
+            for (Future<List<Long>> future : futures) {
+                List<Long> tokens = future.get(30, TimeUnit.SECONDS);
+                List<Long> sorted = new ArrayList<>(tokens);
+                Collections.sort(sorted);
+                assertEquals(sorted, tokens);
+                all.addAll(tokens);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads * rounds, all.size());
+        assertEquals(threads * rounds, (long) Collections.max(all));
+    }
+
+    @Test
+    public void tryLockAllIsAllOrNothing() {
+        assertTrue(backend.tryLock("b", "other", 10_000));
+        assertFalse(backend.tryLockAll(Arrays.asList("a", "b", "c"), "v", 10_000));
+        assertEquals(1, backend.size());
+        assertFalse(backend.tryLockAll(Arrays.asList("a", "a"), "v", 10_000));
+        assertEquals(1, backend.size());
+        assertTrue(backend.unlock("b", "other"));
+        assertTrue(backend.tryLockAll(Arrays.asList("a", "b", "c"), "v", 10_000));
+        assertFalse(backend.tryLock("c", "other", 10_000));
+        assertArrayEquals(new boolean[]{true, false, true, false},
+                backend.unlockAll(Arrays.asList("a", "missing", "c", "a"), "v"));
+        assertArrayEquals(new boolean[]{false}, backend.unlockAll(Arrays.asList("b"), "other"));
+        assertEquals(1, backend.size());
+    }
+
+    @Test
+    public void unlockAllWakesWaiters() throws InterruptedException {
+        assertTrue(backend.tryLockAll(Arrays.asList("a", "b"), "v", 10_000));
+        try (LockBackend.ReleaseWaiter waiter = backend.subscribe("b")) {
+            long generation = waiter.generation();
+            assertArrayEquals(new boolean[]{true, true}, backend.unlockAll(Arrays.asList("a", "b"), "v"));
+            assertTrue(waiter.await(generation, 0, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void concurrentBatchesNeverOverlap() throws Exception {
+        int threads = 8;
+        int rounds = 2_000;
+        List<List<String>> batches = Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("b", "c"),
+                Arrays.asList("c", "d"), Arrays.asList("d", "a"));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String value = "owner-" + t;
+            List<String> keys = batches.get(t % batches.size());
+            futures.add(executor.submit(() -> {
+                start.await();
+                int acquired = 0;
+                while (acquired < rounds) {
+                    if (backend.tryLockAll(keys, value, 10_000)) {
+                        acquired++;
+                        //持有期间相邻批次的key不能被单独加锁
+                        for (String key : keys) {
+                            assertFalse(backend.tryLock(key, "single", 10_000));
+                        }
+                        assertArrayEquals(new boolean[]{true, true}, backend.unlockAll(keys, value));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, backend.size());
+    }
+}
@@ -0,0 +1,89 @@
+package com.demo.redis;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.MemoryBackendContextTest
+ * @description redis.lock.backend=memory时容器不连接Redis就能启动,value锁在JVM内执行.Redis指向没有监听的端口
+ * @date 2019/10/7 10:50
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "redis.lock.backend=memory",
+        "spring.redis.host=127.0.0.1",
+        "spring.redis.port=1",
+        "spring.redis.password=",
+        "redis.lock.leader.enabled=false"
+})
+public class MemoryBackendContextTest {
+
+    @Autowired
+    private RedisLockUtils redisLockUtils;
+    @Autowired
+    private LockBackend lockBackend;
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Test
+    public void startsWithoutRedis() {
+        assertTrue(lockBackend instanceof InMemoryLockBackend);
+        //Redisson只在首次使用时创建
+        assertFalse(context.getBeanFactory().containsSingleton("lazyRedisson"));
+    }
+
+    @Test
+    public void valueLocksRunInMemory() throws InterruptedException {
+        String value = redisLockUtils.nextToken();
+        assertTrue(redisLockUtils.getLockByLua("memory:lock", value, 10_000, TimeUnit.MILLISECONDS));
+        assertFalse(redisLockUtils.tryLockByLua("memory:lock", redisLockUtils.nextToken(), 10_000, 50, TimeUnit.MILLISECONDS));
+        assertTrue(redisLockUtils.releaseLock("memory:lock", value));
+        String token = redisLockUtils.tryAcquireByLua("memory:lock", 10_000, 50, TimeUnit.MILLISECONDS);
+        assertNotNull(token);
+        assertTrue(redisLockUtils.releaseLockByLua("memory:lock", token));
+    }
+
+    @Test
+    public void fencingTokensIncrease() {
+        String first = redisLockUtils.nextToken();
+        long token = redisLockUtils.getLockWithFencingToken("memory:fenced", first, 10_000, TimeUnit.MILLISECONDS);
+        assertTrue(token > 0);
+        assertTrue(redisLockUtils.releaseLockByLua("memory:fenced", first));
+        String second = redisLockUtils.nextToken();
+        assertEquals(token + 1, redisLockUtils.getLockWithFencingToken("memory:fenced", second, 10_000, TimeUnit.MILLISECONDS));
+        assertTrue(redisLockUtils.releaseLockByLua("memory:fenced", second));
+    }
+
+    @Test
+    public void batchLocksRunInMemory() throws InterruptedException {
+        String value = redisLockUtils.nextToken();
+        assertTrue(redisLockUtils.getLocks(Arrays.asList("memory:a", "memory:b", "memory:a"), value, 10));
+        //任意一个key已被占用时一个都不加
+        String other = redisLockUtils.nextToken();
+        assertFalse(redisLockUtils.getLocks(Arrays.asList("memory:c", "memory:b"), other, 10));
+        assertTrue(redisLockUtils.getLockByLua("memory:c", other, 10_000, TimeUnit.MILLISECONDS));
+        assertTrue(redisLockUtils.releaseLockByLua("memory:c", other));
+
+        assertFalse(redisLockUtils.releaseLocks(Arrays.asList("memory:a", "memory:b"), other));
+        assertFalse(redisLockUtils.releaseLocks(Arrays.asList("memory:a", "memory:missing"), value));
+        //memory:a已释放,memory:b仍被持有
+        assertFalse(redisLockUtils.tryLockByLua("memory:b", other, 10_000, 0, TimeUnit.MILLISECONDS));
+        assertTrue(redisLockUtils.releaseLocks(Arrays.asList("memory:b"), value));
+        assertTrue(redisLockUtils.getLocks(Arrays.asList("memory:a", "memory:b"), other, 10));
+        assertTrue(redisLockUtils.releaseLocks(Arrays.asList("memory:a", "memory:b"), other));
+    }
+}
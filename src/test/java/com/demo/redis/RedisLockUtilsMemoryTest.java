@@ -0,0 +1,132 @@
+package com.demo.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.redisson.api.RLock;
+import org.redisson.api.RPermitExpirableSemaphore;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisConnectionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author YiHaoXing
+ * @version 1.0.0
+ * @className com.demo.redis.RedisLockUtilsMemoryTest
+ * @description RedisLockUtils在InMemoryLockBackend上的续期和熔断行为,以及信号量的许可数设置.Redisson为mock,熔断打开后不应再调用它
+ * @date 2019/10/7 22:10
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "redis.lock.backend=memory",
+        "spring.redis.host=127.0.0.1",
+        "spring.redis.port=1",
+        "spring.redis.password=",
+        "redis.lock.leader.enabled=false",
+        "redis.lock.breaker.failure-threshold=3",
+        "redis.lock.breaker.probe-interval-millis=600000"
+})
+public class RedisLockUtilsMemoryTest {
+
+    @MockBean
+    private RedissonClient redissonClient;
+    @Autowired
+    private RedisLockUtils redisLockUtils;
+    @Autowired
+    private LeaseRenewalScheduler leaseRenewalScheduler;
+    @Autowired
+    private RedisCircuitBreaker circuitBreaker;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void shortLeaseIsRenewedPastRequestedTtl() throws InterruptedException {
+        long minLeaseMillis = leaseRenewalScheduler.getMinLeaseMillis();
+        String value = redisLockUtils.nextToken();
+        assertTrue(redisLockUtils.getRenewableLockByLua("renew:short", value, 5, TimeUnit.MILLISECONDS));
+        Thread.sleep(minLeaseMillis * 2);
+        assertFalse(redisLockUtils.tryLockByLua("renew:short", redisLockUtils.nextToken(), 1_000, 0, TimeUnit.MILLISECONDS));
+        assertTrue(redisLockUtils.releaseLockByLua("renew:short", value));
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    public void unlockWithOpenBreakerKeepsHeldBalanced() throws InterruptedException {
+        RLock lock = mock(RLock.class);
+        when(redissonClient.getLock(anyString())).thenReturn(lock);
+        when(lock.tryLock(anyLong(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+        double held = held();
+
+        assertTrue(redisLockUtils.getReentrantLock("breaker:plain", 0, 1_000, TimeUnit.MILLISECONDS));
+        assertTrue(redisLockUtils.getTwoLevelLock("breaker:two-level", 0, 1_000, TimeUnit.MILLISECONDS));
+        assertEquals(held + 2, held(), 0.0D);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                circuitBreaker.call(() -> {
+                    throw new RedisConnectionException("connection refused");
+                });
+                fail("expected RedisConnectionException");
+            } catch (RedisConnectionException expected) {
+                //连续失败后打开
+            }
+        }
+        assertTrue(circuitBreaker.isOpen());
+
+        redisLockUtils.unlock("breaker:plain");
+        redisLockUtils.unlockTwoLevel("breaker:two-level");
+        verify(lock, never()).unlock();
+        assertEquals(held, held(), 0.0D);
+        double unavailable = meterRegistry.find("redis.lock.unlock.unavailable").counters().stream()
+                .mapToDouble(Counter::count).sum();
+        assertEquals(2.0D, unavailable, 0.0D);
+        //两级锁的本地锁已释放,同一节点可以再次获取
+        assertTrue(redisLockUtils.getDegradedLock("breaker:two-level", 0, TimeUnit.MILLISECONDS));
+        redisLockUtils.unlockDegraded("breaker:two-level");
+    }
+
+    @Test
+    public void permitsAreSetAgainAfterSemaphoreIsLost() throws InterruptedException {
+        RPermitExpirableSemaphore semaphore = mock(RPermitExpirableSemaphore.class);
+        when(redissonClient.getPermitExpirableSemaphore(anyString())).thenReturn(semaphore);
+
+        //有空闲许可时一次往返,不设置许可数
+        when(semaphore.tryAcquire(eq(0L), anyLong(), any(TimeUnit.class))).thenReturn("p1");
+        assertEquals("p1", redisLockUtils.tryAcquirePermit("permits", 3, 1, 10, TimeUnit.SECONDS));
+        verify(semaphore, never()).trySetPermits(3);
+
+        //信号量被删除后立即获取失败,重新设置许可数后在剩余等待时间内获取
+        when(semaphore.tryAcquire(eq(0L), anyLong(), any(TimeUnit.class))).thenReturn(null);
+        when(semaphore.trySetPermits(3)).thenReturn(true);
+        when(semaphore.tryAcquire(longThat(wait -> wait > 0 && wait <= 1_000), eq(10_000L), eq(TimeUnit.MILLISECONDS))).thenReturn("p2");
+        assertEquals("p2", redisLockUtils.tryAcquirePermit("permits", 3, 1, 10, TimeUnit.SECONDS));
+        assertEquals("p2", redisLockUtils.tryAcquirePermit("permits", 3, 1, 10, TimeUnit.SECONDS));
+        verify(semaphore, times(2)).trySetPermits(3);
+    }
+
+    private double held() {
+        return meterRegistry.get("redis.lock.held").gauge().value();
+    }
+}